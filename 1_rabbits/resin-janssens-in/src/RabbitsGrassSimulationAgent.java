@@ -2,11 +2,12 @@ import java.awt.Color;
 
 import uchicago.src.sim.gui.Drawable;
 import uchicago.src.sim.gui.SimGraphics;
-import uchicago.src.sim.space.Object2DGrid;
 
 
 /**
  * Class that implements the simulation agent for the rabbits grass simulation.
+ * The state of every rabbit lives in RabbitsGrassSimulationPopulation; an
+ * agent is a drawable copy of one slot, refreshed by the GUI before drawing.
 
  * @author
  */
@@ -14,52 +15,33 @@ import uchicago.src.sim.space.Object2DGrid;
 public class RabbitsGrassSimulationAgent implements Drawable {
 	private int x;
 	private int y;
-	private int vX;
-	private int vY;
 	private int energy;
-	private static int IDNumber = 0;
-	private int ID;
-	private RabbitsGrassSimulationSpace rgsSpace;
+	private int slot;
 	
-	public RabbitsGrassSimulationAgent(int lifespan) {
+	public RabbitsGrassSimulationAgent() {
 		x = -1;
 		y = -1;
-		energy = lifespan;
-		setVxVy();
-		IDNumber++;
-		ID = IDNumber;
+		slot = -1;
 	}
 	
-	private void setVxVy() {
-		vX = 0;
-		vY = 0;
-		
-		while (!(vX == 0 ^ vY == 0)) {
-			vX = (int) Math.floor(Math.random() * 3) - 1;
-			vY = (int) Math.floor(Math.random() * 3) - 1;
-		}
+	public RabbitsGrassSimulationAgent(RabbitsGrassSimulationPopulation population, int slot) {
+		copyFrom(population, slot);
 	}
 	
-	public void setXY(int newX, int newY) {
-		x = newX;
-		y = newY;
-	}
-	
-	public void setRabbitsGrassSimulationSpace(RabbitsGrassSimulationSpace rgss) {
-		rgsSpace = rgss;
+	public void copyFrom(RabbitsGrassSimulationPopulation population, int slot) {
+		this.x = population.getX(slot);
+		this.y = population.getY(slot);
+		this.energy = population.getEnergy(slot);
+		this.slot = slot;
 	}
 
 	public String getID() {
-		return "A-" + ID;
+		return "A-" + slot;
 	}
 	
 	public int getEnergy() {
 		return energy;
 	}
-
-	public void setEnergy(int energy) {
-		this.energy = energy;
-	}
 	
 	public void report() {
 		System.out.println(getID() + " at " + x + ", " + y + " has " + getEnergy() + " units of energy.");
@@ -79,27 +61,4 @@ public class RabbitsGrassSimulationAgent implements Drawable {
 		else
 			G.drawFastRoundRect(Color.red);
 	}
-	
-	public void step() {
-		int newX = x + vX;
-		int newY = y + vY;
-		
-		Object2DGrid grid = rgsSpace.getCurrentAgentSpace();
-		newX = (newX + grid.getSizeX()) % grid.getSizeX();
-		newY = (newY + grid.getSizeY()) % grid.getSizeY();
-		
-		if (tryMove(newX, newY))
-			energy += rgsSpace.takeGrassAt(x, y);
-
-		setVxVy();
-		energy--;
-	}
-	
-	private boolean tryMove(int newX, int newY) {
-		return rgsSpace.moveAgentAt(x, y, newX, newY);
-	}
-	
-	public void receiveEnergy(int amount) {
-		energy += amount;
-	}
 }
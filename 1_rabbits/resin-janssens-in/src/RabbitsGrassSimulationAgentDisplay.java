@@ -0,0 +1,82 @@
+import java.awt.Dimension;
+
+import uchicago.src.collection.BaseMatrix;
+import uchicago.src.sim.space.Discrete2DSpace;
+
+/**
+ * Thin adapter exposing the rabbits of a RabbitsGrassSimulationSpace as a
+ * read-only repast Discrete2DSpace, so that Object2DDisplay can size and
+ * probe the grid. A RabbitsGrassSimulationAgent is only built for a cell
+ * when the display asks for it. Writes, which the GUI may make when an
+ * agent is dragged or probed, are ignored: rabbits only move through
+ * RabbitsGrassSimulationSpace.
+ * @author
+ */
+
+public class RabbitsGrassSimulationAgentDisplay implements Discrete2DSpace, BaseMatrix {
+	private RabbitsGrassSimulationSpace space;
+
+	public RabbitsGrassSimulationAgentDisplay(RabbitsGrassSimulationSpace space) {
+		this.space = space;
+	}
+
+	public int getSizeX() {
+		return space.getSizeX();
+	}
+
+	public int getSizeY() {
+		return space.getSizeY();
+	}
+
+	public Dimension getSize() {
+		return new Dimension(space.getSizeX(), space.getSizeY());
+	}
+
+	public Object getObjectAt(int x, int y) {
+		int slot = space.getAgentAt(x, y);
+		return slot < 0 ? null : new RabbitsGrassSimulationAgent(space.getPopulation(), slot);
+	}
+
+	public double getValueAt(int x, int y) {
+		int slot = space.getAgentAt(x, y);
+		return slot < 0 ? 0 : space.getPopulation().getEnergy(slot);
+	}
+
+	public void putObjectAt(int x, int y, Object object) {
+	}
+
+	public void putValueAt(int x, int y, double value) {
+	}
+
+	public BaseMatrix getMatrix() {
+		return this;
+	}
+
+	public Object get(int x, int y) {
+		return getObjectAt(x, y);
+	}
+
+	public void put(int x, int y, Object object) {
+		putObjectAt(x, y, object);
+	}
+
+	// Nothing is removed
+	public Object remove(int x, int y) {
+		return null;
+	}
+
+	public int size() {
+		return space.getSizeX() * space.getSizeY();
+	}
+
+	public int getNumRows() {
+		return space.getSizeY();
+	}
+
+	public int getNumCols() {
+		return space.getSizeX();
+	}
+
+	public void trim() {
+	}
+}
@@ -0,0 +1,91 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Class that parses the command line of the headless entry points of the
+ * rabbits grass simulation, RabbitsGrassSimulationSweep,
+ * RabbitsGrassSimulationEnsemble and RabbitsGrassSimulationBenchmark, which
+ * all take Name=value arguments. PARAMS names the model parameters in the
+ * order RabbitsGrassSimulationEngine takes them, with Seed last, and
+ * defaults() gives their values, those of RabbitsGrassSimulationModel and
+ * 0 for Seed.
+ * @author
+ */
+
+public class RabbitsGrassSimulationArguments {
+	public static final String[] PARAMS = { "GridSize", "NumInitRabbits", "NumInitGrass", "GrassGrowthRate", "BirthThreshold", "EnergyFactor", "Lifespan", "Seed" };
+	private static final int[] DEFAULTS = { RabbitsGrassSimulationModel.GRIDSIZE, RabbitsGrassSimulationModel.NUMINITRABBITS,
+			RabbitsGrassSimulationModel.NUMINITGRASS, RabbitsGrassSimulationModel.GRASSGROWTHRATE, RabbitsGrassSimulationModel.BIRTHTHRESHOLD,
+			RabbitsGrassSimulationModel.ENERGYFACTOR, RabbitsGrassSimulationModel.LIFESPAN, 0 };
+
+	public static int[] defaults() {
+		return DEFAULTS.clone();
+	}
+
+	public static int indexOf(String name) {
+		for (int i = 0; i < PARAMS.length; i++) {
+			if (PARAMS[i].equals(name))
+				return i;
+		}
+
+		throw new IllegalArgumentException("Unknown parameter " + name);
+	}
+
+	// The values by name in the order given, the last one of a name given twice
+	public static Map<String, String> parse(String[] args) {
+		Map<String, String> options = new LinkedHashMap<String, String>();
+
+		for (String arg : args) {
+			int eq = arg.indexOf('=');
+
+			if (eq < 0)
+				throw new IllegalArgumentException("Expected Name=value but got " + arg);
+
+			options.put(arg.substring(0, eq), arg.substring(eq + 1));
+		}
+
+		return options;
+	}
+
+	// Parses "a,b,c" or "from:to:step"
+	public static int[] parseInts(String value) {
+		if (value.indexOf(':') >= 0) {
+			String[] range = value.split(":");
+			int from = Integer.parseInt(range[0]);
+			int to = Integer.parseInt(range[1]);
+			int step = range.length > 2 ? Integer.parseInt(range[2]) : 1;
+
+			if (step <= 0 || to < from)
+				throw new IllegalArgumentException("Invalid range " + value);
+
+			int[] values = new int[(to - from) / step + 1];
+
+			for (int i = 0; i < values.length; i++) {
+				values[i] = from + i * step;
+			}
+
+			return values;
+		}
+
+		String[] parts = value.split(",");
+		int[] values = new int[parts.length];
+
+		for (int i = 0; i < parts.length; i++) {
+			values[i] = Integer.parseInt(parts[i].trim());
+		}
+
+		return values;
+	}
+
+	// Parses "a,b,c"
+	public static double[] parseDoubles(String value) {
+		String[] parts = value.split(",");
+		double[] values = new double[parts.length];
+
+		for (int i = 0; i < parts.length; i++) {
+			values[i] = Double.parseDouble(parts[i].trim());
+		}
+
+		return values;
+	}
+}
@@ -0,0 +1,215 @@
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+/**
+ * Class that benchmarks the hot paths of the rabbits grass simulation on
+ * headless engines, in the manner of JMH: warmup iterations, then measured
+ * iterations of a fixed duration, reported as the mean and standard
+ * deviation over the iterations. Each grid size and rabbit density is
+ * measured for the full tick, its Step, Grow and Birth actions and
+ * getTotalGrass, in nanoseconds per call, in calls per second and in bytes
+ * allocated per call by the benchmark thread.
+ *
+ * An iteration rebuilds the engine (untimed) every Ticks ticks, so the
+ * density measured stays close to the one asked for.
+ *
+ * Usage: RabbitsGrassSimulationBenchmark GridSizes=20,256,4096 Densities=0.01,0.1 Warmup=3 Iterations=5 Time=1000 Ticks=20 Threads=0 Fused=false
+ * @author
+ */
+
+public class RabbitsGrassSimulationBenchmark {
+	private static final String[] OPS = { "tick", "step", "grow", "birth", "getTotalGrass" };
+	private static final int TICK = 0;
+	private static final int STEP = 1;
+	private static final int GROW = 2;
+	private static final int BIRTH = 3;
+	private static final int TOTAL_GRASS = 4;
+	// getTotalGrass is too cheap to time one call at a time
+	private static final int TOTAL_GRASS_CALLS = 1000;
+
+	private static com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	private static long sink;
+
+	private int warmup = 3;
+	private int iterations = 5;
+	private long time = 1000;
+	private int ticks = 20;
+	private int stepThreads = 0;
+	private boolean fused = false;
+
+	public static void main(String[] args) {
+		RabbitsGrassSimulationBenchmark benchmark = new RabbitsGrassSimulationBenchmark();
+		int[] gridSizes = { 20, 64, 256, 1024, 4096 };
+		double[] densities = { 0.01, 0.05, 0.2 };
+
+		for (Map.Entry<String, String> option : RabbitsGrassSimulationArguments.parse(args).entrySet()) {
+			String name = option.getKey();
+			String value = option.getValue();
+
+			if (name.equals("GridSizes")) {
+				gridSizes = RabbitsGrassSimulationArguments.parseInts(value);
+			} else if (name.equals("Densities")) {
+				densities = RabbitsGrassSimulationArguments.parseDoubles(value);
+			} else if (name.equals("Warmup")) {
+				benchmark.warmup = Integer.parseInt(value);
+			} else if (name.equals("Iterations")) {
+				benchmark.iterations = Integer.parseInt(value);
+			} else if (name.equals("Time")) {
+				benchmark.time = Long.parseLong(value);
+			} else if (name.equals("Ticks")) {
+				benchmark.ticks = Integer.parseInt(value);
+			} else if (name.equals("Threads")) {
+				benchmark.stepThreads = Integer.parseInt(value);
+			} else if (name.equals("Fused")) {
+				benchmark.fused = Boolean.parseBoolean(value);
+			} else {
+				throw new IllegalArgumentException("Unknown option " + name);
+			}
+		}
+
+		if (!threads.isThreadAllocatedMemorySupported())
+			System.out.println("Allocation is not measured on this JVM");
+		else
+			threads.setThreadAllocatedMemoryEnabled(true);
+
+		if (benchmark.stepThreads > 0)
+			System.out.println("Allocation of the step threads is not counted");
+
+		System.out.println(String.format("%-14s %8s %8s %4s %14s %12s %14s %12s", "Benchmark", "GridSize", "Density", "Cnt",
+				"ns/op", "StdDev", "ops/s", "B/op"));
+
+		for (int gridSize : gridSizes) {
+			for (double density : densities) {
+				benchmark.run(gridSize, density);
+			}
+		}
+
+		if (sink == 42)
+			System.out.println();
+	}
+
+	private void run(int gridSize, double density) {
+		double[][] nsPerOp = new double[OPS.length][iterations];
+		double[][] bytesPerOp = new double[OPS.length][iterations];
+		long[] ns = new long[OPS.length];
+		long[] bytes = new long[OPS.length];
+		long[] calls = new long[OPS.length];
+
+		for (int it = -warmup; it < iterations; it++) {
+			for (int op = 0; op < OPS.length; op++) {
+				ns[op] = 0;
+				bytes[op] = 0;
+				calls[op] = 0;
+			}
+
+			long end = System.nanoTime() + time * 1000000L;
+
+			while (System.nanoTime() < end) {
+				RabbitsGrassSimulationEngine engine = build(gridSize, density);
+
+				for (int k = 0; k < ticks; k++) {
+					measureTick(engine, ns, bytes, calls);
+				}
+
+				engine.shutdown();
+			}
+
+			if (it < 0)
+				continue;
+
+			for (int op = 0; op < OPS.length; op++) {
+				nsPerOp[op][it] = (double) ns[op] / calls[op];
+				bytesPerOp[op][it] = (double) bytes[op] / calls[op];
+			}
+		}
+
+		for (int op = 0; op < OPS.length; op++) {
+			double mean = mean(nsPerOp[op]);
+
+			// Step, Grow and Birth are not timed apart in a fused tick
+			if (Double.isNaN(mean))
+				continue;
+
+			System.out.println(String.format("%-14s %8d %8.3f %4d %14.1f %12.1f %14.1f %12.1f", OPS[op], gridSize, density, iterations,
+					mean, stdDev(nsPerOp[op], mean), 1e9 / mean, mean(bytesPerOp[op])));
+		}
+	}
+
+	private RabbitsGrassSimulationEngine build(int gridSize, double density) {
+		int cells = gridSize * gridSize;
+		RabbitsGrassSimulationEngine engine = new RabbitsGrassSimulationEngine(gridSize, (int) Math.round(cells * density), cells,
+				Math.max(RabbitsGrassSimulationModel.GRASSGROWTHRATE, cells / 10), RabbitsGrassSimulationModel.BIRTHTHRESHOLD,
+				RabbitsGrassSimulationModel.ENERGYFACTOR, RabbitsGrassSimulationModel.LIFESPAN);
+		engine.setSeed(System.nanoTime());
+		engine.setStepThreads(stepThreads);
+		engine.setFusedTick(fused);
+		engine.buildModel();
+		return engine;
+	}
+
+	// A fused tick is only timed as a whole
+	private void measureTick(RabbitsGrassSimulationEngine engine, long[] ns, long[] bytes, long[] calls) {
+		long id = Thread.currentThread().getId();
+		long b0 = threads.getThreadAllocatedBytes(id);
+		long t0 = System.nanoTime();
+
+		if (fused) {
+			engine.tick();
+		} else {
+			engine.step();
+			long t1 = System.nanoTime();
+			long b1 = threads.getThreadAllocatedBytes(id);
+			engine.grow();
+			long t2 = System.nanoTime();
+			long b2 = threads.getThreadAllocatedBytes(id);
+			engine.birth();
+			long t3 = System.nanoTime();
+			long b3 = threads.getThreadAllocatedBytes(id);
+
+			record(STEP, t1 - t0, b1 - b0, 1, ns, bytes, calls);
+			record(GROW, t2 - t1, b2 - b1, 1, ns, bytes, calls);
+			record(BIRTH, t3 - t2, b3 - b2, 1, ns, bytes, calls);
+		}
+
+		long t4 = System.nanoTime();
+		long b4 = threads.getThreadAllocatedBytes(id);
+		record(TICK, t4 - t0, b4 - b0, 1, ns, bytes, calls);
+
+		for (int i = 0; i < TOTAL_GRASS_CALLS; i++) {
+			sink += engine.getTotalGrass();
+		}
+
+		long t5 = System.nanoTime();
+		long b5 = threads.getThreadAllocatedBytes(id);
+		record(TOTAL_GRASS, t5 - t4, b5 - b4, TOTAL_GRASS_CALLS, ns, bytes, calls);
+	}
+
+	private static void record(int op, long ns, long bytes, int calls, long[] totalNs, long[] totalBytes, long[] totalCalls) {
+		totalNs[op] += ns;
+		totalBytes[op] += bytes;
+		totalCalls[op] += calls;
+	}
+
+	private static double mean(double[] values) {
+		double sum = 0;
+
+		for (double v : values) {
+			sum += v;
+		}
+
+		return sum / values.length;
+	}
+
+	private static double stdDev(double[] values, double mean) {
+		if (values.length < 2)
+			return 0;
+
+		double sum = 0;
+
+		for (double v : values) {
+			sum += (v - mean) * (v - mean);
+		}
+
+		return Math.sqrt(sum / (values.length - 1));
+	}
+}
@@ -0,0 +1,235 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class that writes and reads checkpoints of a rabbits grass simulation
+ * running on the dense RabbitsGrassSimulationSpace. The arrays of the grass
+ * field, the population and the free-cell list are copied in bulk through
+ * a direct buffer of BUFFER_SIZE bytes, so a checkpoint costs about as much
+ * as a memory copy of the world. It replaces the previous checkpoint of the
+ * same file in one rename, so a crash leaves either one whole.
+ *
+ * The random streams are derived from (seed, tick, phase), so they need no
+ * saving, and a restored engine continues exactly as the original would
+ * have, provided it steps the same way (sequential or parallel).
+ *
+ * Layout (little endian): a header of HEADER_SIZE bytes holding the magic
+ * "RGSC", the version, the seven model parameters, the seed (long), the
+ * tick, births, deaths and dropped births of the last tick, the number of
+ * rabbits, the number of free cells and the grass total (long); then the
+ * grass of every cell, the x, y, vX, vY and energy of every rabbit, and
+ * the free cells in their list order.
+ * @author
+ */
+
+public class RabbitsGrassSimulationCheckpoint {
+	private static final int MAGIC = 0x52475343;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 128;
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	public static void write(RabbitsGrassSimulationEngine engine, File file) throws IOException {
+		RabbitsGrassSimulationSpace space = engine.getSpace();
+
+		if (space == null)
+			throw new IllegalArgumentException("Only runs on the dense space can be checkpointed");
+
+		RabbitsGrassSimulationGrassField field = space.getGrassField();
+		RabbitsGrassSimulationPopulation population = engine.getPopulation();
+		int[] params = engine.getParameters();
+		int cells = field.getSizeX() * field.getSizeY();
+		int rabbits = population.size();
+		int freeCount = space.getFreeCellCount();
+
+		File temp = File.createTempFile("checkpoint", ".tmp", file.getAbsoluteFile().getParentFile());
+		FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE);
+		boolean written = false;
+
+		try {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+
+			for (int i = 0; i < params.length; i++) {
+				buffer.putInt(params[i]);
+			}
+
+			buffer.putLong(engine.getSeed());
+			buffer.putInt(engine.getTickCount());
+			buffer.putInt(engine.getBirths());
+			buffer.putInt(engine.getDeaths());
+			buffer.putInt(engine.getUnplacedBirths());
+			buffer.putInt(rabbits);
+			buffer.putInt(freeCount);
+			buffer.putLong(field.getTotalGrass());
+			buffer.position(HEADER_SIZE);
+
+			writeInts(channel, buffer, field.getGrass(), cells);
+			writeInts(channel, buffer, population.getXArray(), rabbits);
+			writeInts(channel, buffer, population.getYArray(), rabbits);
+			writeInts(channel, buffer, population.getVXArray(), rabbits);
+			writeInts(channel, buffer, population.getVYArray(), rabbits);
+			writeInts(channel, buffer, population.getEnergyArray(), rabbits);
+			writeInts(channel, buffer, space.getFreeCells(), freeCount);
+			flush(channel, buffer);
+			channel.force(true);
+			written = true;
+		} finally {
+			channel.close();
+
+			if (!written)
+				temp.delete();
+		}
+
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	// The restored engine is built with the given step threads, as those decide how it continues
+	public static RabbitsGrassSimulationEngine read(File file, int stepThreads) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+		try {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			readHeader(channel, buffer, file);
+			int[] params = readParameters(buffer);
+
+			long seed = buffer.getLong();
+			int tick = buffer.getInt();
+			int births = buffer.getInt();
+			int deaths = buffer.getInt();
+			int unplacedBirths = buffer.getInt();
+			int rabbits = buffer.getInt();
+			int freeCount = buffer.getInt();
+			long totalGrass = buffer.getLong();
+
+			int cells = params[0] * params[0];
+			long expected = HEADER_SIZE + 4L * (cells + 5L * rabbits + freeCount);
+
+			if (channel.size() != expected)
+				throw new IOException("Truncated checkpoint " + file + ": " + channel.size() + " bytes instead of " + expected);
+
+			RabbitsGrassSimulationEngine engine = new RabbitsGrassSimulationEngine(params[0], params[1], params[2], params[3],
+					params[4], params[5], params[6]);
+			engine.setSeed(seed);
+			engine.setStepThreads(stepThreads);
+			engine.buildEmptyModel();
+
+			RabbitsGrassSimulationSpace space = engine.getSpace();
+			RabbitsGrassSimulationGrassField field = space.getGrassField();
+			RabbitsGrassSimulationPopulation population = engine.getPopulation();
+			population.resize(rabbits);
+
+			buffer.position(HEADER_SIZE);
+
+			readInts(channel, buffer, field.getGrass(), cells);
+			readInts(channel, buffer, population.getXArray(), rabbits);
+			readInts(channel, buffer, population.getYArray(), rabbits);
+			readInts(channel, buffer, population.getVXArray(), rabbits);
+			readInts(channel, buffer, population.getVYArray(), rabbits);
+			readInts(channel, buffer, population.getEnergyArray(), rabbits);
+			readInts(channel, buffer, space.getFreeCells(), freeCount);
+
+			field.adjustTotal(totalGrass - field.getTotalGrass());
+			population.recountHistogram();
+			space.restoreFreeCells(freeCount);
+			engine.restoreTick(tick, births, deaths, unplacedBirths);
+			return engine;
+		} finally {
+			channel.close();
+		}
+	}
+
+	// The seven model parameters of a checkpoint, without reading the rest of it
+	public static int[] readParameters(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			readHeader(channel, buffer, file);
+			return readParameters(buffer);
+		} finally {
+			channel.close();
+		}
+	}
+
+	// Reads the header into buffer, checked and positioned after the version
+	private static void readHeader(FileChannel channel, ByteBuffer buffer, File file) throws IOException {
+		if (channel.size() < HEADER_SIZE)
+			throw new IOException("Not a rabbits checkpoint: " + file);
+
+		buffer.clear().limit(HEADER_SIZE);
+		fill(channel, buffer);
+		buffer.flip();
+
+		if (buffer.getInt() != MAGIC)
+			throw new IOException("Not a rabbits checkpoint: " + file);
+
+		int version = buffer.getInt();
+
+		if (version != VERSION)
+			throw new IOException("Unsupported checkpoint version " + version + " in " + file);
+	}
+
+	private static int[] readParameters(ByteBuffer header) {
+		int[] params = new int[7];
+
+		for (int i = 0; i < params.length; i++) {
+			params[i] = header.getInt();
+		}
+
+		return params;
+	}
+
+	// Appends the values to buffer, writing it out whenever it fills up
+	private static void writeInts(FileChannel channel, ByteBuffer buffer, int[] values, int length) throws IOException {
+		for (int from = 0; from < length;) {
+			if (buffer.remaining() < 4)
+				flush(channel, buffer);
+
+			int count = Math.min(buffer.remaining() / 4, length - from);
+			buffer.asIntBuffer().put(values, from, count);
+			buffer.position(buffer.position() + 4 * count);
+			from += count;
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+
+		buffer.clear();
+	}
+
+	// Takes the values from buffer, reading more of the file whenever it runs out
+	private static void readInts(FileChannel channel, ByteBuffer buffer, int[] values, int length) throws IOException {
+		for (int from = 0; from < length;) {
+			if (buffer.remaining() < 4) {
+				buffer.compact();
+				fill(channel, buffer);
+				buffer.flip();
+			}
+
+			int count = Math.min(buffer.remaining() / 4, length - from);
+			buffer.asIntBuffer().get(values, from, count);
+			buffer.position(buffer.position() + 4 * count);
+			from += count;
+		}
+	}
+
+	// Reads until buffer is full or the file ends
+	private static void fill(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0)
+				break;
+		}
+	}
+}
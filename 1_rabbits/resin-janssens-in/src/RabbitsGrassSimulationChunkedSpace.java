@@ -0,0 +1,289 @@
+import java.util.Arrays;
+
+/**
+ * Class that implements a sparse world for very large rabbits grass
+ * simulations. The torus is cut into square chunks of chunkSize cells a
+ * side, and a chunk only exists while it holds grass or rabbits: reads of
+ * a missing chunk see no grass and no rabbit, and the first write
+ * allocates it, and only the layer written to. A chunk that stays empty
+ * for RECYCLE_AGE ticks is dropped from the world and kept in a small pool
+ * for reuse, so the memory follows the occupied area rather than the size
+ * of the grid.
+ *
+ * A rabbit is placed by drawing random cells until a free one comes up,
+ * which is uniform over the free cells and fast as long as the world is
+ * sparse, which is what this world is for.
+ * @author
+ */
+
+public class RabbitsGrassSimulationChunkedSpace implements RabbitsGrassSimulationWorld {
+	// Idle chunks are looked for every RECYCLE_INTERVAL ticks
+	private static final int RECYCLE_INTERVAL = 16;
+	private static final int RECYCLE_AGE = 64;
+	// Recycled chunks kept for reuse, the others are left to the garbage collector
+	private static final int MAX_POOLED = 256;
+
+	// The grass and the rabbits of a chunk are allocated separately, since most chunks only hold grass
+	private static class Chunk {
+		private int[] grass;
+		private int[] agents;
+		private long grassUnits;
+		private int rabbits;
+		private int lastUsed;
+		private int index;
+		private int activeIndex;
+
+		boolean isEmpty() {
+			return grassUnits == 0 && rabbits == 0;
+		}
+	}
+
+	private Chunk[] chunks;
+	private Chunk[] active;
+	private int numActive;
+	private Chunk[] pooled;
+	private int numPooled;
+	private int chunkShift;
+	private int chunkMask;
+	private int chunksX;
+	private int sizeX;
+	private int sizeY;
+	private long cells;
+	private long occupied;
+	private long totalGrass;
+	private int tick;
+	private RabbitsGrassSimulationPopulation population;
+	private int energyFactor;
+
+	public RabbitsGrassSimulationChunkedSpace(int gridSize, int chunkSize, int energyFactor, RabbitsGrassSimulationPopulation population) {
+		if (chunkSize <= 0 || (chunkSize & (chunkSize - 1)) != 0)
+			throw new IllegalArgumentException("Chunk size must be a power of two, got " + chunkSize);
+
+		chunkShift = Integer.numberOfTrailingZeros(chunkSize);
+		chunkMask = chunkSize - 1;
+		chunksX = (gridSize + chunkMask) >> chunkShift;
+		long numChunks = (long) chunksX * chunksX;
+
+		if (numChunks > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("Too many chunks of size " + chunkSize + " for a grid of " + gridSize);
+
+		chunks = new Chunk[(int) numChunks];
+		active = new Chunk[16];
+		numActive = 0;
+		pooled = new Chunk[MAX_POOLED];
+		numPooled = 0;
+		this.sizeX = gridSize;
+		this.sizeY = gridSize;
+		cells = (long) gridSize * gridSize;
+		occupied = 0;
+		totalGrass = 0;
+		tick = 0;
+		this.population = population;
+		this.energyFactor = energyFactor;
+	}
+
+	public void spreadGrass(int grass, RabbitsGrassSimulationRandom random) {
+		for (int i = 0; i < grass; i++) {
+			int x = random.nextInt(sizeX);
+			int y = random.nextInt(sizeY);
+
+			addGrassAt(x, y, 1);
+		}
+	}
+
+	public void addGrassAt(int x, int y, int units) {
+		Chunk c = allocatedChunkAt(x, y);
+
+		if (c.grass == null)
+			c.grass = new int[chunkCells()];
+
+		c.grass[localCell(x, y)] += units;
+		c.grassUnits += units;
+		c.lastUsed = tick;
+		totalGrass += units;
+	}
+
+	public int getGrassAt(int x, int y) {
+		Chunk c = chunkAt(x, y);
+		return c == null || c.grass == null ? 0 : c.grass[localCell(x, y)] * energyFactor;
+	}
+
+	public int getGrassUnitsAt(int x, int y) {
+		Chunk c = chunkAt(x, y);
+		return c == null || c.grass == null ? 0 : c.grass[localCell(x, y)];
+	}
+
+	public int takeGrassAt(int x, int y) {
+		Chunk c = chunkAt(x, y);
+
+		if (c == null || c.grass == null)
+			return 0;
+
+		int i = localCell(x, y);
+		int units = c.grass[i];
+		c.grass[i] = 0;
+		c.grassUnits -= units;
+		c.lastUsed = tick;
+		totalGrass -= units;
+		return units * energyFactor;
+	}
+
+	public long getTotalGrass() {
+		return totalGrass * energyFactor;
+	}
+
+	public int getAgentAt(int x, int y) {
+		Chunk c = chunkAt(x, y);
+		return c == null || c.agents == null ? -1 : c.agents[localCell(x, y)];
+	}
+
+	public boolean isCellOccupied(int x, int y) {
+		return getAgentAt(x, y) >= 0;
+	}
+
+	public boolean addAgent(int slot, RabbitsGrassSimulationRandom random) {
+		if (occupied == cells)
+			return false;
+
+		while (true) {
+			int x = random.nextInt(sizeX);
+			int y = random.nextInt(sizeY);
+
+			if (!isCellOccupied(x, y)) {
+				occupy(x, y, slot);
+				population.setXY(slot, x, y);
+				return true;
+			}
+		}
+	}
+
+	public void removeAgentAt(int x, int y) {
+		Chunk c = chunkAt(x, y);
+
+		if (c == null || c.agents == null)
+			return;
+
+		int i = localCell(x, y);
+
+		if (c.agents[i] < 0)
+			return;
+
+		c.agents[i] = -1;
+		c.rabbits--;
+		c.lastUsed = tick;
+		occupied--;
+	}
+
+	public void relabelAgentAt(int x, int y, int slot) {
+		chunkAt(x, y).agents[localCell(x, y)] = slot;
+	}
+
+	public boolean moveAgentAt(int x, int y, int newX, int newY) {
+		if (isCellOccupied(newX, newY))
+			return false;
+
+		int slot = getAgentAt(x, y);
+		removeAgentAt(x, y);
+		occupy(newX, newY, slot);
+		population.setXY(slot, newX, newY);
+		return true;
+	}
+
+	/**
+	 * Called once per tick, before the rabbits move. Every RECYCLE_INTERVAL
+	 * ticks, the chunks that have been empty since RECYCLE_AGE ticks are
+	 * removed. An empty chunk has no grass and no rabbit left, so it is
+	 * already clean for reuse.
+	 */
+	public void recycleChunks(int tick) {
+		this.tick = tick;
+
+		if (tick % RECYCLE_INTERVAL != 0)
+			return;
+
+		for (int k = numActive - 1; k >= 0; k--) {
+			Chunk c = active[k];
+
+			if (c.isEmpty() && tick - c.lastUsed >= RECYCLE_AGE)
+				release(c);
+		}
+	}
+
+	public RabbitsGrassSimulationPopulation getPopulation() {
+		return population;
+	}
+
+	public int getEnergyFactor() {
+		return energyFactor;
+	}
+
+	public int getSizeX() {
+		return sizeX;
+	}
+
+	public int getSizeY() {
+		return sizeY;
+	}
+
+	private void occupy(int x, int y, int slot) {
+		Chunk c = allocatedChunkAt(x, y);
+
+		if (c.agents == null) {
+			c.agents = new int[chunkCells()];
+			Arrays.fill(c.agents, -1);
+		}
+
+		c.agents[localCell(x, y)] = slot;
+		c.rabbits++;
+		c.lastUsed = tick;
+		occupied++;
+	}
+
+	private int chunkCells() {
+		return 1 << (2 * chunkShift);
+	}
+
+	private Chunk chunkAt(int x, int y) {
+		return chunks[(x >> chunkShift) + (y >> chunkShift) * chunksX];
+	}
+
+	private int localCell(int x, int y) {
+		return (x & chunkMask) + ((y & chunkMask) << chunkShift);
+	}
+
+	private Chunk allocatedChunkAt(int x, int y) {
+		int index = (x >> chunkShift) + (y >> chunkShift) * chunksX;
+		Chunk c = chunks[index];
+
+		if (c != null)
+			return c;
+
+		if (numPooled > 0) {
+			c = pooled[--numPooled];
+			pooled[numPooled] = null;
+		} else {
+			c = new Chunk();
+		}
+
+		if (numActive == active.length)
+			active = Arrays.copyOf(active, numActive * 2);
+
+		c.index = index;
+		c.activeIndex = numActive;
+		c.lastUsed = tick;
+		active[numActive++] = c;
+		chunks[index] = c;
+		return c;
+	}
+
+	private void release(Chunk c) {
+		chunks[c.index] = null;
+		Chunk last = active[--numActive];
+		active[c.activeIndex] = last;
+		last.activeIndex = c.activeIndex;
+		active[numActive] = null;
+
+		if (numPooled < MAX_POOLED)
+			pooled[numPooled++] = c;
+	}
+}
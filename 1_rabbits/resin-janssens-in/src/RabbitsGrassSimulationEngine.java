@@ -0,0 +1,448 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Class that runs the rabbits grass simulation without any repast GUI or
+ * Swing objects. It owns the space and the rabbits and performs the same
+ * Step, Grow and Birth actions that RabbitsGrassSimulationModel schedules,
+ * so it can be driven either by the repast schedule or by a plain loop.
+ * Rabbits are stepped by slot over a RabbitsGrassSimulationPopulation,
+ * either sequentially in a shuffled order or, when step threads are set,
+ * with the deterministic two-phase RabbitsGrassSimulationParallelStep.
+ * Grass grows in bulk through RabbitsGrassSimulationGrowth. With a chunk
+ * size set, the world is a sparse RabbitsGrassSimulationChunkedSpace
+ * instead, on which rabbits always step sequentially and grass is spread
+ * unit by unit, so only the occupied area costs memory. Each action
+ * draws from its own RabbitsGrassSimulationRandom stream, reseeded from
+ * (seed, tick, action), so a run is replayed exactly by its seed.
+ *
+ * With the fused tick, the sequential Step marks the dead and the parents
+ * while it moves the rabbits, so the reaping and the Birth action only
+ * touch those slots instead of walking the whole population again. It
+ * draws the same streams in the same order, so a fused run is identical
+ * to an unfused run with the same seed.
+ * @author
+ */
+
+public class RabbitsGrassSimulationEngine {
+	private static final long BUILD = 1;
+	private static final long STEP = 2;
+	private static final long BIRTH = 3;
+	private static final long GROW = 4;
+	private static final int ENERGY_BINS = 64;
+
+	private int gridSize;
+	private int numInitRabbits;
+	private int numInitGrass;
+	private int grassGrowthRate;
+	private int birthThreshold;
+	private int energyFactor;
+	private int lifespan;
+
+	private RabbitsGrassSimulationWorld world;
+	private RabbitsGrassSimulationSpace rgsSpace;
+	private RabbitsGrassSimulationChunkedSpace chunkedSpace;
+	private int chunkSize;
+	private RabbitsGrassSimulationPopulation population;
+	private int[] order;
+	private int[] dead;
+	private int numDead;
+	private int[] parents;
+	private int numParents;
+	// Index of each slot in parents, -1 for rabbits not about to give birth
+	private int[] parentIndex;
+	private boolean fusedTick;
+
+	private RabbitsGrassSimulationRandom random;
+	private long seed;
+	private int stepThreads;
+	private ForkJoinPool pool;
+	private RabbitsGrassSimulationParallelStep parallelStep;
+	private RabbitsGrassSimulationGrowth growth;
+	private int tickCount;
+	private int unplacedBirths;
+	private int births;
+	private int deaths;
+
+	public RabbitsGrassSimulationEngine(int gridSize, int numInitRabbits, int numInitGrass, int grassGrowthRate,
+			int birthThreshold, int energyFactor, int lifespan) {
+		this.gridSize = gridSize;
+		this.numInitRabbits = numInitRabbits;
+		this.numInitGrass = numInitGrass;
+		this.grassGrowthRate = grassGrowthRate;
+		this.birthThreshold = birthThreshold;
+		this.energyFactor = energyFactor;
+		this.lifespan = lifespan;
+
+		// Bins up to twice the birth threshold, above which rabbits rarely stay
+		population = new RabbitsGrassSimulationPopulation(numInitRabbits, ENERGY_BINS,
+				Math.max(1, (2 * birthThreshold + ENERGY_BINS - 1) / ENERGY_BINS));
+		order = new int[0];
+		dead = new int[0];
+		parents = new int[0];
+		parentIndex = new int[0];
+		random = new RabbitsGrassSimulationRandom(0);
+		seed = System.nanoTime();
+		stepThreads = 0;
+		chunkSize = 0;
+		fusedTick = false;
+		tickCount = 0;
+	}
+
+	public void buildModel() {
+		buildEmptyModel();
+
+		if (chunkedSpace != null) {
+			random.reseed(seed, tickCount, GROW);
+			chunkedSpace.spreadGrass(numInitGrass, random);
+		} else {
+			growth.grow(numInitGrass, seed, tickCount);
+		}
+
+		random.reseed(seed, tickCount, BUILD);
+
+		for (int i = 0; i < numInitRabbits; i++) {
+			addNewAgent();
+		}
+	}
+
+	// Builds the world and the step and growth helpers, with no grass and no rabbits yet
+	public void buildEmptyModel() {
+		if (chunkSize > 0) {
+			chunkedSpace = new RabbitsGrassSimulationChunkedSpace(gridSize, chunkSize, energyFactor, population);
+			world = chunkedSpace;
+		} else {
+			rgsSpace = new RabbitsGrassSimulationSpace(gridSize, energyFactor, population);
+			world = rgsSpace;
+
+			if (stepThreads > 0) {
+				pool = new ForkJoinPool(stepThreads);
+				parallelStep = new RabbitsGrassSimulationParallelStep(rgsSpace, pool);
+			}
+
+			growth = new RabbitsGrassSimulationGrowth(rgsSpace.getGrassField(), pool);
+		}
+	}
+
+	// Releases the step threads, if any
+	public void shutdown() {
+		if (pool != null)
+			pool.shutdown();
+	}
+
+	// One tick: Step, Grow and Birth, in this order, fused into one pass if set
+	public void tick() {
+		if (fusedTick && parallelStep == null) {
+			fusedTick();
+			return;
+		}
+
+		step();
+		grow();
+		birth();
+	}
+
+	public void step() {
+		startTick();
+
+		if (parallelStep != null) {
+			parallelStep.step(seed, tickCount);
+			reapDeadAgents();
+			return;
+		}
+
+		int n = population.size();
+
+		random.reseed(seed, tickCount, STEP);
+
+		if (order.length < n)
+			order = new int[Math.max(n, order.length * 2)];
+
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+
+		for (int i = n - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int tmp = order[i];
+			order[i] = order[j];
+			order[j] = tmp;
+		}
+
+		for (int k = 0; k < n; k++) {
+			stepAgent(order[k]);
+		}
+
+		reapDeadAgents();
+	}
+
+	private void startTick() {
+		tickCount++;
+		births = 0;
+		deaths = 0;
+
+		if (chunkedSpace != null)
+			chunkedSpace.recycleChunks(tickCount);
+	}
+
+	// Step, Grow and Birth with a single pass over the population
+	private void fusedTick() {
+		startTick();
+
+		int n = population.size();
+
+		random.reseed(seed, tickCount, STEP);
+
+		if (order.length < n)
+			order = new int[Math.max(n, order.length * 2)];
+
+		if (dead.length < n) {
+			dead = new int[order.length];
+			parents = new int[order.length];
+		}
+
+		if (parentIndex.length < n) {
+			int from = parentIndex.length;
+			parentIndex = Arrays.copyOf(parentIndex, Math.max(n, parentIndex.length * 2));
+			Arrays.fill(parentIndex, from, parentIndex.length, -1);
+		}
+
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+
+		for (int i = n - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int tmp = order[i];
+			order[i] = order[j];
+			order[j] = tmp;
+		}
+
+		numDead = 0;
+		numParents = 0;
+
+		for (int k = 0; k < n; k++) {
+			int i = order[k];
+			stepAgent(i);
+
+			// A rabbit's energy only changes during its own step, so it is final here
+			int energy = population.getEnergy(i);
+
+			if (energy < 1) {
+				dead[numDead++] = i;
+			} else if (energy > birthThreshold) {
+				parentIndex[i] = numParents;
+				parents[numParents++] = i;
+			}
+		}
+
+		reapMarkedAgents();
+		grow();
+		birthMarkedAgents();
+	}
+
+	// Same swaps as reapDeadAgents, which removes the dead from the highest slot down
+	private void reapMarkedAgents() {
+		Arrays.sort(dead, 0, numDead);
+
+		for (int k = numDead - 1; k >= 0; k--) {
+			int i = dead[k];
+			world.removeAgentAt(population.getX(i), population.getY(i));
+			int moved = population.remove(i);
+
+			if (moved >= 0) {
+				world.relabelAgentAt(population.getX(i), population.getY(i), i);
+
+				// The last rabbit moved into the freed slot may be a parent
+				if (parentIndex[moved] >= 0) {
+					parents[parentIndex[moved]] = i;
+					parentIndex[i] = parentIndex[moved];
+					parentIndex[moved] = -1;
+				}
+			}
+		}
+
+		deaths += numDead;
+	}
+
+	// Same order as birth: parents by slot, then the newborns that are parents themselves
+	private void birthMarkedAgents() {
+		random.reseed(seed, tickCount, BIRTH);
+		Arrays.sort(parents, 0, numParents);
+		int firstNewborn = population.size();
+
+		for (int k = 0; k < numParents; k++) {
+			int i = parents[k];
+			parentIndex[i] = -1;
+			giveBirth(i);
+		}
+
+		for (int i = firstNewborn; i < population.size(); i++) {
+			if (population.getEnergy(i) > birthThreshold)
+				giveBirth(i);
+		}
+	}
+
+	private void stepAgent(int i) {
+		int x = population.getX(i);
+		int y = population.getY(i);
+		int newX = (x + population.getVX(i) + gridSize) % gridSize;
+		int newY = (y + population.getVY(i) + gridSize) % gridSize;
+
+		if (world.moveAgentAt(x, y, newX, newY))
+			population.addEnergy(i, world.takeGrassAt(newX, newY));
+
+		population.setRandomDirection(i, random);
+		population.addEnergy(i, -1);
+	}
+
+	public void grow() {
+		if (chunkedSpace != null) {
+			random.reseed(seed, tickCount, GROW);
+			chunkedSpace.spreadGrass(grassGrowthRate, random);
+			return;
+		}
+
+		growth.grow(grassGrowthRate, seed, tickCount);
+	}
+
+	public void birth() {
+		random.reseed(seed, tickCount, BIRTH);
+
+		// Newborns are appended and visited too, as in the original list loop
+		for (int i = 0; i < population.size(); i++) {
+			if (population.getEnergy(i) > birthThreshold)
+				giveBirth(i);
+		}
+	}
+
+	private void giveBirth(int i) {
+		addNewAgent();
+		population.setEnergy(i, population.getEnergy(i) / 2);
+	}
+
+	private void addNewAgent() {
+		int slot = population.add(lifespan, random);
+
+		// A rabbit that finds no free cell is not born, but is counted
+		if (!world.addAgent(slot, random)) {
+			population.remove(slot);
+			unplacedBirths++;
+		} else {
+			births++;
+		}
+	}
+
+	// Swap-and-pop compaction: walking backwards, the rabbit moved into slot i has already been checked
+	private int reapDeadAgents() {
+		int count = 0;
+
+		for (int i = population.size() - 1; i >= 0; i--) {
+			if (population.getEnergy(i) < 1) {
+				world.removeAgentAt(population.getX(i), population.getY(i));
+
+				if (population.remove(i) >= 0)
+					world.relabelAgentAt(population.getX(i), population.getY(i), i);
+
+				count++;
+			}
+		}
+
+		deaths += count;
+		return count;
+	}
+
+	// Every rabbit in the population is alive once the dead are reaped
+	public int countLivingAgents() {
+		return population.size();
+	}
+
+	// Seed of all random streams; set before buildModel
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	// Threads of the parallel step, 0 for the sequential step; set before buildModel
+	public void setStepThreads(int stepThreads) {
+		this.stepThreads = stepThreads;
+	}
+
+	public int getStepThreads() {
+		return stepThreads;
+	}
+
+	// Side of the chunks of a sparse world, a power of two, or 0 for the dense space; set before buildModel
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	// Whether tick fuses the sequential Step, Grow and Birth; the parallel step ignores it
+	public void setFusedTick(boolean fusedTick) {
+		this.fusedTick = fusedTick;
+	}
+
+	public boolean isFusedTick() {
+		return fusedTick;
+	}
+
+	public int getTickCount() {
+		return tickCount;
+	}
+
+	// Counters of a restored run, the rest of its state being restored in the world and the population
+	public void restoreTick(int tickCount, int births, int deaths, int unplacedBirths) {
+		this.tickCount = tickCount;
+		this.births = births;
+		this.deaths = deaths;
+		this.unplacedBirths = unplacedBirths;
+	}
+
+	// GridSize, NumInitRabbits, NumInitGrass, GrassGrowthRate, BirthThreshold, EnergyFactor and Lifespan
+	public int[] getParameters() {
+		return new int[] { gridSize, numInitRabbits, numInitGrass, grassGrowthRate, birthThreshold, energyFactor, lifespan };
+	}
+
+	// Births dropped because the grid was full
+	public int getUnplacedBirths() {
+		return unplacedBirths;
+	}
+
+	// The dense space, or null when the world is chunked
+	public RabbitsGrassSimulationSpace getSpace() {
+		return rgsSpace;
+	}
+
+	public RabbitsGrassSimulationWorld getWorld() {
+		return world;
+	}
+
+	public RabbitsGrassSimulationPopulation getPopulation() {
+		return population;
+	}
+
+	// Rabbits born during the current tick so far
+	public int getBirths() {
+		return births;
+	}
+
+	// Rabbits that died during the current tick so far
+	public int getDeaths() {
+		return deaths;
+	}
+
+	public int getNumRabbits() {
+		return population.size();
+	}
+
+	public long getTotalGrass() {
+		return world.getTotalGrass();
+	}
+}
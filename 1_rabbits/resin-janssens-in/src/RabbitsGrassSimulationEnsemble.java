@@ -0,0 +1,207 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class that runs an ensemble of replicas of one parameter set of the
+ * rabbits grass simulation, each with its own seed, and writes per tick the
+ * mean, variance, a 95% confidence interval of the mean and quantiles of
+ * the number of rabbits and of the total grass over the replicas.
+ *
+ * Replicas advance in lockstep by blocks of BLOCK_TICKS ticks on a
+ * fork-join pool, one task per replica, and each block is summarised and
+ * written before the next one runs. The values kept are those of one block
+ * only, so besides the replicas themselves the memory is O(replicas), and
+ * the quantiles are exact, from sorting the values of each tick.
+ *
+ * Usage: RabbitsGrassSimulationEnsemble Replicas=100 Ticks=1000 Out=ensemble.csv GrassGrowthRate=200 ...
+ * Parameters default to the values of RabbitsGrassSimulationModel, Seed
+ * to 0, and the replica seeds are derived from Seed.
+ * @author
+ */
+
+public class RabbitsGrassSimulationEnsemble {
+	private static final int BLOCK_TICKS = 64;
+	private static final long REPLICA_SALT = 0x5245504cL;
+	private static final double[] QUANTILES = { 0.05, 0.25, 0.5, 0.75, 0.95 };
+
+	private RabbitsGrassSimulationEngine[] replicas;
+	private int numReplicas;
+	private int blockTicks;
+	// Values of the current block, replica r at tick k of the block at k * numReplicas + r
+	private long[] rabbits;
+	private long[] grass;
+	private long[] sorted;
+
+	public RabbitsGrassSimulationEnsemble(int[] params, int numReplicas) {
+		this.numReplicas = numReplicas;
+		replicas = new RabbitsGrassSimulationEngine[numReplicas];
+
+		for (int r = 0; r < numReplicas; r++) {
+			replicas[r] = new RabbitsGrassSimulationEngine(params[0], params[1], params[2], params[3], params[4], params[5], params[6]);
+			replicas[r].setSeed(RabbitsGrassSimulationRandom.hash(params[7], 0, r, REPLICA_SALT));
+			replicas[r].setFusedTick(true);
+		}
+
+		rabbits = new long[BLOCK_TICKS * numReplicas];
+		grass = new long[BLOCK_TICKS * numReplicas];
+		sorted = new long[numReplicas];
+	}
+
+	public static void main(String[] args) throws IOException {
+		int numReplicas = 100;
+		int ticks = 1000;
+		int threads = Runtime.getRuntime().availableProcessors();
+		File out = new File("ensemble.csv");
+		int[] params = RabbitsGrassSimulationArguments.defaults();
+
+		for (Map.Entry<String, String> option : RabbitsGrassSimulationArguments.parse(args).entrySet()) {
+			String name = option.getKey();
+			String value = option.getValue();
+
+			if (name.equals("Replicas"))
+				numReplicas = Integer.parseInt(value);
+			else if (name.equals("Ticks"))
+				ticks = Integer.parseInt(value);
+			else if (name.equals("Threads"))
+				threads = Integer.parseInt(value);
+			else if (name.equals("Out"))
+				out = new File(value);
+			else
+				params[RabbitsGrassSimulationArguments.indexOf(name)] = Integer.parseInt(value);
+		}
+
+		System.out.println("Running " + numReplicas + " replicas of " + ticks + " ticks on " + threads + " threads");
+
+		RabbitsGrassSimulationEnsemble ensemble = new RabbitsGrassSimulationEnsemble(params, numReplicas);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		PrintWriter writer = new PrintWriter(out);
+
+		try {
+			ensemble.run(pool, ticks, writer);
+		} finally {
+			writer.close();
+			pool.shutdown();
+		}
+
+		System.out.println("Wrote " + out);
+	}
+
+	public void run(ForkJoinPool pool, int ticks, PrintWriter out) {
+		StringBuilder line = new StringBuilder("Tick");
+		appendHeader(line, "Rabbits");
+		appendHeader(line, "Grass");
+		out.println(line);
+
+		blockTicks = 0;
+		pool.invoke(new Advance(0, numReplicas));
+		writeBlock(out, 0, 1, line);
+
+		for (int done = 0; done < ticks; done += blockTicks) {
+			blockTicks = Math.min(BLOCK_TICKS, ticks - done);
+			pool.invoke(new Advance(0, numReplicas));
+			writeBlock(out, done + 1, blockTicks, line);
+		}
+	}
+
+	// Builds the replicas on the first call, with blockTicks at 0, and records their initial state
+	private void advance(int r) {
+		RabbitsGrassSimulationEngine engine = replicas[r];
+
+		if (blockTicks == 0) {
+			engine.buildModel();
+			rabbits[r] = engine.getNumRabbits();
+			grass[r] = engine.getTotalGrass();
+			return;
+		}
+
+		for (int k = 0; k < blockTicks; k++) {
+			engine.tick();
+			rabbits[k * numReplicas + r] = engine.getNumRabbits();
+			grass[k * numReplicas + r] = engine.getTotalGrass();
+		}
+	}
+
+	private void writeBlock(PrintWriter out, int firstTick, int count, StringBuilder line) {
+		for (int k = 0; k < count; k++) {
+			line.setLength(0);
+			line.append(firstTick + k);
+			appendStatistics(line, rabbits, k * numReplicas);
+			appendStatistics(line, grass, k * numReplicas);
+			out.println(line);
+		}
+	}
+
+	private static void appendHeader(StringBuilder line, String name) {
+		line.append(',').append(name).append("Mean,").append(name).append("Var,");
+		line.append(name).append("Low,").append(name).append("High");
+
+		for (double q : QUANTILES) {
+			line.append(',').append(name).append('Q').append(Math.round(q * 100));
+		}
+	}
+
+	// Mean, sample variance, normal 95% interval of the mean and quantiles of one tick
+	private void appendStatistics(StringBuilder line, long[] values, int offset) {
+		double mean = 0;
+
+		for (int r = 0; r < numReplicas; r++) {
+			mean += values[offset + r];
+		}
+
+		mean /= numReplicas;
+		double variance = 0;
+
+		for (int r = 0; r < numReplicas; r++) {
+			double d = values[offset + r] - mean;
+			variance += d * d;
+		}
+
+		variance = numReplicas > 1 ? variance / (numReplicas - 1) : 0;
+		double halfWidth = 1.96 * Math.sqrt(variance / numReplicas);
+		line.append(',').append(mean).append(',').append(variance);
+		line.append(',').append(mean - halfWidth).append(',').append(mean + halfWidth);
+
+		System.arraycopy(values, offset, sorted, 0, numReplicas);
+		Arrays.sort(sorted);
+
+		for (double q : QUANTILES) {
+			line.append(',').append(quantile(sorted, q));
+		}
+	}
+
+	// Linear interpolation between the closest ranks
+	private static double quantile(long[] sorted, double q) {
+		double position = q * (sorted.length - 1);
+		int below = (int) position;
+		int above = Math.min(below + 1, sorted.length - 1);
+		return sorted[below] + (position - below) * (sorted[above] - sorted[below]);
+	}
+
+	private class Advance extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private int from;
+		private int to;
+
+		Advance(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Advance(from, mid), new Advance(mid, to));
+				return;
+			}
+
+			advance(from);
+		}
+	}
+}
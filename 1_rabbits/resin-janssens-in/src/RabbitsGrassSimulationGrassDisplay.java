@@ -0,0 +1,78 @@
+import java.awt.Dimension;
+
+import uchicago.src.collection.BaseMatrix;
+import uchicago.src.sim.space.Discrete2DSpace;
+
+/**
+ * Thin adapter exposing a RabbitsGrassSimulationGrassField as a repast
+ * Discrete2DSpace, so that Value2DDisplay can render it. Values are only
+ * boxed here, when the display asks for them.
+ * @author
+ */
+
+public class RabbitsGrassSimulationGrassDisplay implements Discrete2DSpace, BaseMatrix {
+	private RabbitsGrassSimulationGrassField field;
+
+	public RabbitsGrassSimulationGrassDisplay(RabbitsGrassSimulationGrassField field) {
+		this.field = field;
+	}
+
+	public int getSizeX() {
+		return field.getSizeX();
+	}
+
+	public int getSizeY() {
+		return field.getSizeY();
+	}
+
+	public Dimension getSize() {
+		return new Dimension(field.getSizeX(), field.getSizeY());
+	}
+
+	public Object getObjectAt(int x, int y) {
+		return Integer.valueOf(field.getGrassAt(x, y));
+	}
+
+	public double getValueAt(int x, int y) {
+		return field.getGrassAt(x, y);
+	}
+
+	public void putObjectAt(int x, int y, Object object) {
+		field.putGrassAt(x, y, object == null ? 0 : ((Number) object).intValue());
+	}
+
+	public void putValueAt(int x, int y, double value) {
+		field.putGrassAt(x, y, (int) value);
+	}
+
+	public BaseMatrix getMatrix() {
+		return this;
+	}
+
+	public Object get(int x, int y) {
+		return getObjectAt(x, y);
+	}
+
+	public void put(int x, int y, Object object) {
+		putObjectAt(x, y, object);
+	}
+
+	public Object remove(int x, int y) {
+		return Integer.valueOf(field.takeGrassAt(x, y));
+	}
+
+	public int size() {
+		return field.getSizeX() * field.getSizeY();
+	}
+
+	public int getNumRows() {
+		return field.getSizeY();
+	}
+
+	public int getNumCols() {
+		return field.getSizeX();
+	}
+
+	public void trim() {
+	}
+}
@@ -0,0 +1,77 @@
+/**
+ * Class that stores the grass of the rabbits grass simulation in a flat
+ * primitive array. Cell (x, y) lives at index x + y * sizeX, so reads and
+ * writes never box and a full scan walks memory in order. The total is kept
+ * up to date by every write, so reading it is constant time; code writing
+ * to getGrass() directly reports its net change through adjustTotal.
+ * @author
+ */
+
+public class RabbitsGrassSimulationGrassField {
+	private int[] grass;
+	private int sizeX;
+	private int sizeY;
+	private long total;
+
+	public RabbitsGrassSimulationGrassField(int sizeX, int sizeY) {
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		grass = new int[sizeX * sizeY];
+		total = 0;
+	}
+
+	public int getSizeX() {
+		return sizeX;
+	}
+
+	public int getSizeY() {
+		return sizeY;
+	}
+
+	public int getGrassAt(int x, int y) {
+		return grass[x + y * sizeX];
+	}
+
+	public void putGrassAt(int x, int y, int units) {
+		int i = x + y * sizeX;
+		total += units - grass[i];
+		grass[i] = units;
+	}
+
+	public void addGrassAt(int x, int y, int units) {
+		grass[x + y * sizeX] += units;
+		total += units;
+	}
+
+	public int takeGrassAt(int x, int y) {
+		int i = x + y * sizeX;
+		int units = grass[i];
+		grass[i] = 0;
+		total -= units;
+		return units;
+	}
+
+	public long getTotalGrass() {
+		return total;
+	}
+
+	public void adjustTotal(long units) {
+		total += units;
+	}
+
+	// Full scan, to check or rebuild the running total
+	public long countTotalGrass() {
+		long totalGrass = 0;
+
+		for (int i = 0; i < grass.length; i++) {
+			totalGrass += grass[i];
+		}
+
+		return totalGrass;
+	}
+
+	// Direct access for bulk passes over the whole field
+	public int[] getGrass() {
+		return grass;
+	}
+}
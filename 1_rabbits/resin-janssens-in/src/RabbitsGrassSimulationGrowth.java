@@ -0,0 +1,131 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class that grows grass in bulk for the rabbits grass simulation. Spreading
+ * n units uniformly over the grid is a multinomial draw, so instead of
+ * placing units one by one the grid is cut into tiles of rows and:
+ *
+ * 1. the n units are split over the tiles with a chain of conditional
+ *    binomial draws, on one stream;
+ * 2. each tile splits its share over its cells the same way, on its own
+ *    stream, written straight into the grass field.
+ *
+ * A tile whose share is below SCATTER_DENSITY units per cell scatters its
+ * units one by one instead, which is cheaper there since a tile fits in
+ * cache. Tiles run on the fork-join pool when there is one, and since every
+ * tile reseeds its stream from (seed, tick, tile) the result does not depend
+ * on the thread count.
+ * @author
+ */
+
+public class RabbitsGrassSimulationGrowth {
+	private static final int TILE_ROWS = 32;
+	// Below this many units per cell a tile scatters its share unit by unit, which stays in cache within the tile
+	private static final int SCATTER_DENSITY = 8;
+	private static final long TILES_PHASE = 0x54494c45L;
+	private static final long CELLS_PHASE = 0x43454c4cL;
+
+	private RabbitsGrassSimulationGrassField field;
+	private ForkJoinPool pool;
+	private int sizeX;
+	private int sizeY;
+	private int numTiles;
+	private int[] tileUnits;
+	private RabbitsGrassSimulationRandom random;
+	private RabbitsGrassSimulationRandom[] tileRandom;
+
+	public RabbitsGrassSimulationGrowth(RabbitsGrassSimulationGrassField field, ForkJoinPool pool) {
+		this.field = field;
+		this.pool = pool;
+		this.sizeX = field.getSizeX();
+		this.sizeY = field.getSizeY();
+		numTiles = (sizeY + TILE_ROWS - 1) / TILE_ROWS;
+		tileUnits = new int[numTiles];
+		random = new RabbitsGrassSimulationRandom(0);
+		tileRandom = new RabbitsGrassSimulationRandom[numTiles];
+
+		for (int t = 0; t < numTiles; t++) {
+			tileRandom[t] = new RabbitsGrassSimulationRandom(0);
+		}
+	}
+
+	// A negative number of units grows nothing, as spreading them one by one did
+	public void grow(int units, long seed, int tick) {
+		units = Math.max(units, 0);
+		random.reseed(seed, tick, TILES_PHASE);
+		int remainingUnits = units;
+		int remainingCells = sizeX * sizeY;
+
+		for (int t = 0; t < numTiles; t++) {
+			int cells = tileRows(t) * sizeX;
+			int k = random.nextBinomial(remainingUnits, (double) cells / remainingCells);
+			tileUnits[t] = k;
+			remainingUnits -= k;
+			remainingCells -= cells;
+			tileRandom[t].reseed(seed, tick, CELLS_PHASE + t);
+		}
+
+		if (pool != null)
+			pool.invoke(new Tiles(0, numTiles));
+		else
+			growTiles(0, numTiles);
+
+		field.adjustTotal(units);
+	}
+
+	private int tileRows(int t) {
+		return Math.min(TILE_ROWS, sizeY - t * TILE_ROWS);
+	}
+
+	private void growTiles(int fromTile, int toTile) {
+		for (int t = fromTile; t < toTile; t++) {
+			growTile(t);
+		}
+	}
+
+	private void growTile(int t) {
+		int[] grass = field.getGrass();
+		RabbitsGrassSimulationRandom r = tileRandom[t];
+		int from = t * TILE_ROWS * sizeX;
+		int cells = tileRows(t) * sizeX;
+		int units = tileUnits[t];
+
+		if (units < (long) cells * SCATTER_DENSITY) {
+			for (int i = 0; i < units; i++) {
+				grass[from + r.nextInt(cells)]++;
+			}
+
+			return;
+		}
+
+		for (int i = 0; i < cells && units > 0; i++) {
+			int k = r.nextBinomial(units, 1.0 / (cells - i));
+			grass[from + i] += k;
+			units -= k;
+		}
+	}
+
+	private class Tiles extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private int fromTile;
+		private int toTile;
+
+		Tiles(int fromTile, int toTile) {
+			this.fromTile = fromTile;
+			this.toTile = toTile;
+		}
+
+		@Override
+		protected void compute() {
+			if (toTile - fromTile > 1) {
+				int mid = (fromTile + toTile) >>> 1;
+				invokeAll(new Tiles(fromTile, mid), new Tiles(mid, toTile));
+				return;
+			}
+
+			growTiles(fromTile, toTile);
+		}
+	}
+}
@@ -1,5 +1,6 @@
 import java.awt.Color;
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
 
 import uchicago.src.sim.analysis.DataSource;
 import uchicago.src.sim.analysis.OpenSequenceGraph;
@@ -12,7 +13,6 @@ import uchicago.src.sim.gui.DisplaySurface;
 import uchicago.src.sim.gui.ColorMap;
 import uchicago.src.sim.gui.Object2DDisplay;
 import uchicago.src.sim.gui.Value2DDisplay;
-import uchicago.src.sim.util.SimUtilities;
 
 /**
  * Class that implements the simulation model for the rabbits grass
@@ -24,13 +24,18 @@ import uchicago.src.sim.util.SimUtilities;
  */
 
 public class RabbitsGrassSimulationModel extends SimModelImpl {
-		private static final int GRIDSIZE = 20;
-		private static final int NUMINITRABBITS = 10;
-		private static final int NUMINITGRASS = 10;
-		private static final int GRASSGROWTHRATE = 50;
-		private static final int BIRTHTHRESHOLD = 300;
-		private static final int ENERGYFACTOR = 1;
-		private static final int LIFESPAN = 40;
+		static final int GRIDSIZE = 20;
+		static final int NUMINITRABBITS = 10;
+		static final int NUMINITGRASS = 10;
+		static final int GRASSGROWTHRATE = 50;
+		static final int BIRTHTHRESHOLD = 300;
+		static final int ENERGYFACTOR = 1;
+		static final int LIFESPAN = 40;
+		static final int STEPTHREADS = 0;
+		static final boolean FUSEDTICK = false;
+		static final int CHECKPOINTINTERVAL = 0;
+		static final int MAXFPS = 25;
+		static final int DISPLAYSIZE = 200;
 				
 		private int gridSize = GRIDSIZE;
 		private int numInitRabbits = NUMINITRABBITS;
@@ -39,11 +44,21 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 		private int birthThreshold = BIRTHTHRESHOLD;
 		private int energyFactor = ENERGYFACTOR;
 		private int lifespan = LIFESPAN;
+		private int stepThreads = STEPTHREADS;
+		private boolean fusedTick = FUSEDTICK;
+		private long seed = System.currentTimeMillis();
+		// Resumed from at build time if it exists, and written every checkpointInterval ticks if that is positive
+		private String checkpoint = "";
+		private int checkpointInterval = CHECKPOINTINTERVAL;
+		// 0 renders every tick on the simulation thread
+		private int maxFps = MAXFPS;
+		// Larger grids are downsampled to at most this many cells a side
+		private int displaySize = DISPLAYSIZE;
 		
 		private Schedule schedule;
-		private RabbitsGrassSimulationSpace rgsSpace;
+		private RabbitsGrassSimulationEngine engine;
 		private DisplaySurface displaySurf;
-		private ArrayList<RabbitsGrassSimulationAgent> agentList;
+		private RabbitsGrassSimulationRenderer renderer;
 		private OpenSequenceGraph amounts;
 
 		class grassInSpace implements DataSource, Sequence {
@@ -52,7 +67,7 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 			}
 			
 			public double getSValue() {
-				return (double) rgsSpace.getTotalGrass();
+				return (double) engine.getTotalGrass();
 			}
 		}
 		
@@ -62,7 +77,7 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 			}
 			
 			public double getSValue() {
-				return (double) agentList.size();
+				return (double) engine.getNumRabbits();
 			}
 		}
 		
@@ -81,46 +96,60 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 		}
 		
 		public void buildModel() {
-			System.out.println("Running BuildModel");
-			rgsSpace = new RabbitsGrassSimulationSpace(gridSize, energyFactor);
-			rgsSpace.spreadGrass(numInitGrass);
-			
-			for (int i = 0; i < numInitRabbits; i++) {
-				addNewAgent();
+			if (checkpoint.length() > 0 && new File(checkpoint).exists()) {
+				try {
+					engine = RabbitsGrassSimulationCheckpoint.read(new File(checkpoint), stepThreads);
+				} catch (IOException e) {
+					throw new IllegalArgumentException("Could not resume from " + checkpoint, e);
+				}
+				
+				engine.setFusedTick(fusedTick);
+				System.out.println("Resumed from " + checkpoint + " at tick " + engine.getTickCount() + " with seed " + engine.getSeed()
+						+ ", its parameters replace the model ones");
+				return;
 			}
 			
-			for (int i = 0; i < agentList.size(); i++) {
-				RabbitsGrassSimulationAgent rgsa = (RabbitsGrassSimulationAgent) agentList.get(i);
-				rgsa.report();
+			System.out.println("Running BuildModel with seed " + seed);
+			engine = new RabbitsGrassSimulationEngine(gridSize, numInitRabbits, numInitGrass, grassGrowthRate,
+					birthThreshold, energyFactor, lifespan);
+			engine.setSeed(seed);
+			engine.setStepThreads(stepThreads);
+			engine.setFusedTick(fusedTick);
+			engine.buildModel();
+			
+			RabbitsGrassSimulationPopulation population = engine.getPopulation();
+			
+			for (int i = 0; i < population.size(); i++) {
+				new RabbitsGrassSimulationAgent(population, i).report();
 			}
 		}
 		
 		public void buildSchedule() {
 			System.out.println("Running BuildSchedule");
 			
-			class RabbitsGrassSimulationStep extends BasicAction {
+			// Step, Grow and Birth as one action, fused or not, as repast runs the actions of a tick in random order
+			class RabbitsGrassSimulationTick extends BasicAction {
 				public void execute() {
-					SimUtilities.shuffle(agentList);
+					engine.tick();
 					
-					for (int i = 0; i < agentList.size(); i++) {
-						RabbitsGrassSimulationAgent rgsa = (RabbitsGrassSimulationAgent) agentList.get(i);
-						rgsa.step();
-					}
-					
-					reapDeadAgents();
-					displaySurf.updateDisplay();
+					if (renderer != null)
+						renderer.tickDone();
 				}
 			}
 			
-			schedule.scheduleActionBeginning(0, new RabbitsGrassSimulationStep());
+			schedule.scheduleActionBeginning(0, new RabbitsGrassSimulationTick());
 			
 			class RabbitsGrassSimulationCountLiving extends BasicAction {
 				public void execute() {
-					countLivingAgents();
+					System.out.println("Number of living agents is: " + engine.countLivingAgents());
+					
+					if (engine.getUnplacedBirths() > 0)
+						System.out.println("Births dropped on a full grid: " + engine.getUnplacedBirths());
 				}
 			}
 			
-			schedule.scheduleActionAtInterval(10, new RabbitsGrassSimulationCountLiving());
+			// The samplers run last, so that both kinds of tick are sampled once complete
+			schedule.scheduleActionAtInterval(10, new RabbitsGrassSimulationCountLiving(), Schedule.LAST);
 			
 			class RabbitsGrassSimulationUpdateGrassInSpace extends BasicAction {
 				public void execute() {
@@ -128,30 +157,23 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 				}
 			}
 			
-			schedule.scheduleActionAtInterval(10, new RabbitsGrassSimulationUpdateGrassInSpace());
-			
-			class RabbitsGrassSimulationGrow extends BasicAction {
-				public void execute() {
-					rgsSpace.spreadGrass(grassGrowthRate);
-				}
-			}
-			
-			schedule.scheduleActionAtInterval(1, new RabbitsGrassSimulationGrow());
+			if (amounts != null)
+				schedule.scheduleActionAtInterval(10, new RabbitsGrassSimulationUpdateGrassInSpace(), Schedule.LAST);
 			
-			class RabbitsGrassSimulationBirth extends BasicAction {
+			class RabbitsGrassSimulationSaveCheckpoint extends BasicAction {
 				public void execute() {
-					for (int i = 0; i < agentList.size(); i++) {
-						RabbitsGrassSimulationAgent rgsa = agentList.get(i);
-						
-						if (rgsa.getEnergy() > birthThreshold) {
-							addNewAgent();
-							rgsa.setEnergy(rgsa.getEnergy() / 2);
-						}
+					try {
+						RabbitsGrassSimulationCheckpoint.write(engine, new File(checkpoint));
+						System.out.println("Wrote checkpoint " + checkpoint + " at tick " + engine.getTickCount());
+					} catch (IOException e) {
+						System.out.println("Could not write checkpoint " + checkpoint + ": " + e.getMessage());
 					}
 				}
 			}
 			
-			schedule.scheduleActionAtInterval(1, new RabbitsGrassSimulationBirth());
+			// Scheduled last, so that it runs after its tick
+			if (checkpointInterval > 0 && checkpoint.length() > 0)
+				schedule.scheduleActionAtInterval(checkpointInterval, new RabbitsGrassSimulationSaveCheckpoint(), Schedule.LAST);
 		}
 		
 		public void buildDisplay() {
@@ -165,10 +187,11 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 			
 			map.mapColor(0, Color.black);
 			
-			Value2DDisplay displayGrass = new Value2DDisplay(rgsSpace.getCurrentRGSSpace(), map);
-			Object2DDisplay displayAgents = new Object2DDisplay(rgsSpace.getCurrentAgentSpace());
-					
-			displayAgents.setObjectList(agentList);
+			renderer = new RabbitsGrassSimulationRenderer(engine.getWorld(), displaySurf, displaySize, maxFps);
+			Value2DDisplay displayGrass = new Value2DDisplay(renderer.getSpace().getCurrentRGSSpace(), map);
+			Object2DDisplay displayAgents = new Object2DDisplay(renderer.getSpace().getCurrentAgentSpace());
+			
+			displayAgents.setObjectList(renderer.getAgentList());
 			
 			displaySurf.addDisplayableProbeable(displayGrass, "Grass");
 			displaySurf.addDisplayableProbeable(displayAgents, "Agents");
@@ -178,56 +201,23 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 			
 		}
 		
-		private void addNewAgent() {
-			RabbitsGrassSimulationAgent a = new RabbitsGrassSimulationAgent(lifespan);
-			agentList.add(a);
-			rgsSpace.addAgent(a);
-		}
-		
-		private int reapDeadAgents() {
-			int count = 0;
-			
-			for (int i = agentList.size() - 1; i >= 0; i--) {
-				RabbitsGrassSimulationAgent rgsa = (RabbitsGrassSimulationAgent) agentList.get(i);
-				
-				if (rgsa.getEnergy() < 1) {
-					rgsSpace.removeAgentAt(rgsa.getX(), rgsa.getY());
-					agentList.remove(i);
-					count++;
-				}
-			}
-			
-			return count;
-		}
-		
-		private int countLivingAgents() {
-			int livingAgents = 0;
-			
-			for (int i = 0; i < agentList.size(); i++) {
-				RabbitsGrassSimulationAgent rgsa = (RabbitsGrassSimulationAgent) agentList.get(i);
-				
-				if (rgsa.getEnergy() > 0)
-					livingAgents++;
-			}
-			
-			System.out.println("Number of living agents is: " + livingAgents);
-			
-			return livingAgents;
-		}
-
 		public void begin() {
 			buildModel();
 			buildSchedule();
-			buildDisplay();
 			
-			displaySurf.display();
-			amounts.display();
+			if (displaySurf != null) {
+				buildDisplay();
+				
+				displaySurf.display();
+				amounts.display();
+				renderer.start();
+			}
 		}
 
 		public String[] getInitParam() {
 			// Parameters to be set by users via the Repast UI slider bar
 			// Do "not" modify the parameters names provided in the skeleton code, you can add more if you want 
-			String[] params = { "GridSize", "NumInitRabbits", "NumInitGrass", "GrassGrowthRate", "BirthThreshold", "EnergyFactor", "Lifespan" };
+			String[] params = { "GridSize", "NumInitRabbits", "NumInitGrass", "GrassGrowthRate", "BirthThreshold", "EnergyFactor", "Lifespan", "StepThreads", "FusedTick", "Seed", "Checkpoint", "CheckpointInterval", "MaxFps", "DisplaySize" };
 			return params;
 		}
 
@@ -287,6 +277,62 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 			this.energyFactor = energyFactor;
 		}
 		
+		public int getStepThreads() {
+			return stepThreads;
+		}
+		
+		public void setStepThreads(int stepThreads) {
+			this.stepThreads = stepThreads;
+		}
+		
+		public boolean getFusedTick() {
+			return fusedTick;
+		}
+		
+		public void setFusedTick(boolean fusedTick) {
+			this.fusedTick = fusedTick;
+		}
+		
+		public long getSeed() {
+			return seed;
+		}
+		
+		public void setSeed(long seed) {
+			this.seed = seed;
+		}
+		
+		public String getCheckpoint() {
+			return checkpoint;
+		}
+		
+		public void setCheckpoint(String checkpoint) {
+			this.checkpoint = checkpoint;
+		}
+		
+		public int getCheckpointInterval() {
+			return checkpointInterval;
+		}
+		
+		public void setCheckpointInterval(int checkpointInterval) {
+			this.checkpointInterval = checkpointInterval;
+		}
+		
+		public int getMaxFps() {
+			return maxFps;
+		}
+		
+		public void setMaxFps(int maxFps) {
+			this.maxFps = maxFps;
+		}
+		
+		public int getDisplaySize() {
+			return displaySize;
+		}
+		
+		public void setDisplaySize(int displaySize) {
+			this.displaySize = displaySize;
+		}
+		
 		public String getName() {
 			return "Rabbit Grass Simulator Model";
 		}
@@ -297,14 +343,28 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 
 		public void setup() {
 			System.out.println("Running setup");
-			rgsSpace = null;
-			agentList = new ArrayList<RabbitsGrassSimulationAgent>();
+			
+			if (engine != null)
+				engine.shutdown();
+			
+			if (renderer != null)
+				renderer.shutdown();
+			
+			engine = null;
+			renderer = null;
 			schedule = new Schedule(1);
 			
 			if (displaySurf != null) {
 				displaySurf.dispose();
 			}
 			
+			displaySurf = null;
+			amounts = null;
+			
+			// In repast batch mode no Swing objects are built at all
+			if (isBatch())
+				return;
+			
 			String windowName = "Rabbits Grass Simulation Model Window 1";
 			displaySurf = null;
 			displaySurf = new DisplaySurface(this, windowName);
@@ -313,4 +373,8 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 			registerDisplaySurface(windowName, displaySurf);
 			this.registerMediaProducer("Plot", amounts);
 		}
+		
+		private boolean isBatch() {
+			return getController() != null && getController().isBatch();
+		}
 }
@@ -0,0 +1,200 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Class that performs the Step action of the rabbits grass simulation in
+ * two parallel phases over horizontal tiles of the grid.
+ *
+ * In the propose phase every rabbit computes its target cell and, if that
+ * cell is free at the start of the tick, claims it with a per-tick random
+ * rank. In the move phase the rabbit with the lowest rank on each claimed
+ * cell moves and eats, and every rabbit picks a new direction and loses one
+ * unit of energy. The grass eaten and the energy histogram changes are
+ * collected per tile and applied in tile order once the phase has joined.
+ * All random draws are hashed from (seed, tick, slot) by
+ * RabbitsGrassSimulationRandom, so a tick only depends on the seed and the
+ * state, never on the thread count.
+ * @author
+ */
+
+public class RabbitsGrassSimulationParallelStep {
+	// Rows per tile; fixed so that the tiling does not depend on the thread count
+	private static final int TILE_ROWS = 32;
+	// Below this many rabbits a tile is not split further
+	private static final int MIN_TASK_RABBITS = 4096;
+
+	private static final long RANK_SALT = 0x52414e4bL;
+	private static final long DIRECTION_SALT = 0x44495245L;
+
+	private RabbitsGrassSimulationSpace space;
+	private RabbitsGrassSimulationPopulation population;
+	private ForkJoinPool pool;
+	private int sizeX;
+	private int sizeY;
+	private int numTiles;
+
+	// Rabbits sorted by tile: the slots of tile t are bySlot[tileStart[t] .. tileStart[t + 1])
+	private int[] tileStart;
+	private int[] bySlot;
+	private int[] target;
+	private long[] rank;
+	private AtomicLongArray claims;
+	private long[] eatenByTile;
+	private int[] histogramDelta;
+
+	public RabbitsGrassSimulationParallelStep(RabbitsGrassSimulationSpace space, ForkJoinPool pool) {
+		this.space = space;
+		this.population = space.getPopulation();
+		this.pool = pool;
+		this.sizeX = space.getSizeX();
+		this.sizeY = space.getSizeY();
+		numTiles = (sizeY + TILE_ROWS - 1) / TILE_ROWS;
+		tileStart = new int[numTiles + 1];
+		bySlot = new int[0];
+		target = new int[0];
+		rank = new long[0];
+		claims = new AtomicLongArray(sizeX * sizeY);
+		eatenByTile = new long[numTiles];
+		histogramDelta = new int[numTiles * population.getNumBins()];
+
+		for (int i = 0; i < claims.length(); i++) {
+			claims.set(i, Long.MAX_VALUE);
+		}
+	}
+
+	public void step(long seed, int tick) {
+		int n = population.size();
+
+		if (bySlot.length < n) {
+			int capacity = Math.max(n, bySlot.length * 2);
+			bySlot = new int[capacity];
+			target = new int[capacity];
+			rank = new long[capacity];
+		}
+
+		sortByTile(n);
+		pool.invoke(new Phase(seed, tick, true, 0, numTiles));
+		pool.invoke(new Phase(seed, tick, false, 0, numTiles));
+
+		long eaten = 0;
+
+		for (int t = 0; t < numTiles; t++) {
+			eaten += eatenByTile[t];
+			eatenByTile[t] = 0;
+			population.applyHistogramDelta(histogramDelta, t * population.getNumBins());
+		}
+
+		space.getGrassField().adjustTotal(-eaten);
+	}
+
+	// Counting sort of the slots by the tile of their current row
+	private void sortByTile(int n) {
+		Arrays.fill(tileStart, 0);
+
+		for (int i = 0; i < n; i++) {
+			tileStart[population.getY(i) / TILE_ROWS + 1]++;
+		}
+
+		for (int t = 0; t < numTiles; t++) {
+			tileStart[t + 1] += tileStart[t];
+		}
+
+		int[] next = Arrays.copyOf(tileStart, numTiles);
+
+		for (int i = 0; i < n; i++) {
+			bySlot[next[population.getY(i) / TILE_ROWS]++] = i;
+		}
+	}
+
+	private void propose(long seed, int tick, int i) {
+		int x = population.getX(i);
+		int y = population.getY(i);
+		int newX = (x + population.getVX(i) + sizeX) % sizeX;
+		int newY = (y + population.getVY(i) + sizeY) % sizeY;
+		int cell = newX + newY * sizeX;
+
+		target[i] = cell;
+
+		if (space.getAgentAtCell(cell) >= 0) {
+			rank[i] = Long.MAX_VALUE;
+			return;
+		}
+
+		// High bits random, low bits the slot, so ranks are distinct and ties impossible
+		long r = (RabbitsGrassSimulationRandom.hash(seed, tick, i, RANK_SALT) & 0x7fffffff00000000L) | i;
+		rank[i] = r;
+
+		long current = claims.get(cell);
+
+		while (r < current && !claims.compareAndSet(cell, current, r)) {
+			current = claims.get(cell);
+		}
+	}
+
+	private void move(long seed, int tick, int tile, int i) {
+		int cell = target[i];
+		long r = rank[i];
+		int energy = population.getEnergy(i);
+		int newEnergy = energy - 1;
+
+		// Each claimed cell has exactly one winner, which also resets the claim
+		if (r != Long.MAX_VALUE && claims.get(cell) == r) {
+			claims.set(cell, Long.MAX_VALUE);
+			space.relocateAgent(population.getX(i) + population.getY(i) * sizeX, cell);
+
+			int[] grass = space.getGrassField().getGrass();
+			eatenByTile[tile] += grass[cell];
+			newEnergy += grass[cell] * space.getEnergyFactor();
+			grass[cell] = 0;
+		}
+
+		int d = (int) (RabbitsGrassSimulationRandom.hash(seed, tick, i, DIRECTION_SALT) >>> 62);
+		population.setDirection(i, d);
+		population.setEnergyUncounted(i, newEnergy);
+
+		int offset = tile * population.getNumBins();
+		histogramDelta[offset + population.binOf(energy)]--;
+		histogramDelta[offset + population.binOf(newEnergy)]++;
+	}
+
+	private class Phase extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private long seed;
+		private int tick;
+		private boolean propose;
+		private int fromTile;
+		private int toTile;
+
+		Phase(long seed, int tick, boolean propose, int fromTile, int toTile) {
+			this.seed = seed;
+			this.tick = tick;
+			this.propose = propose;
+			this.fromTile = fromTile;
+			this.toTile = toTile;
+		}
+
+		@Override
+		protected void compute() {
+			int from = tileStart[fromTile];
+			int to = tileStart[toTile];
+
+			if (toTile - fromTile > 1 && to - from > MIN_TASK_RABBITS) {
+				int mid = (fromTile + toTile) >>> 1;
+				invokeAll(new Phase(seed, tick, propose, fromTile, mid), new Phase(seed, tick, propose, mid, toTile));
+				return;
+			}
+
+			for (int t = fromTile; t < toTile; t++) {
+				for (int k = tileStart[t]; k < tileStart[t + 1]; k++) {
+					if (propose)
+						propose(seed, tick, bySlot[k]);
+					else
+						move(seed, tick, t, bySlot[k]);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,207 @@
+import java.util.Arrays;
+
+/**
+ * Class that stores the rabbits of the rabbits grass simulation as a
+ * structure of arrays. Rabbit i is described by x[i], y[i], vX[i], vY[i]
+ * and energy[i] for 0 <= i < size. Births are appended at the end and a
+ * death is removed in constant time by moving the last rabbit into the
+ * freed slot, so slots are not stable across removals.
+ *
+ * The population also keeps a histogram of the energy of its rabbits, in
+ * bins of a fixed width with the last bin open ended, updated by every
+ * change of energy so that sampling it is constant time.
+ * @author
+ */
+
+public class RabbitsGrassSimulationPopulation {
+	private int[] x;
+	private int[] y;
+	private int[] vX;
+	private int[] vY;
+	private int[] energy;
+	private int size;
+	private int[] histogram;
+	private int binWidth;
+
+	public RabbitsGrassSimulationPopulation(int initialCapacity, int numBins, int binWidth) {
+		int capacity = Math.max(initialCapacity, 16);
+		x = new int[capacity];
+		y = new int[capacity];
+		vX = new int[capacity];
+		vY = new int[capacity];
+		energy = new int[capacity];
+		size = 0;
+		histogram = new int[numBins];
+		this.binWidth = binWidth;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// Appends a rabbit that is not placed yet and returns its slot
+	public int add(int lifespan, RabbitsGrassSimulationRandom random) {
+		if (size == x.length)
+			grow();
+
+		int i = size++;
+		x[i] = -1;
+		y[i] = -1;
+		energy[i] = lifespan;
+		histogram[binOf(lifespan)]++;
+		setRandomDirection(i, random);
+		return i;
+	}
+
+	/**
+	 * Removes rabbit i by moving the last rabbit into its slot.
+	 * Returns the old slot of the moved rabbit, or -1 if i was the last one.
+	 */
+	public int remove(int i) {
+		int last = --size;
+		histogram[binOf(energy[i])]--;
+
+		if (i == last)
+			return -1;
+
+		x[i] = x[last];
+		y[i] = y[last];
+		vX[i] = vX[last];
+		vY[i] = vY[last];
+		energy[i] = energy[last];
+		return last;
+	}
+
+	private static final int[] DX = { 1, -1, 0, 0 };
+	private static final int[] DY = { 0, 0, 1, -1 };
+
+	// Picks one of the four axis-aligned directions, uniformly
+	public void setRandomDirection(int i, RabbitsGrassSimulationRandom random) {
+		setDirection(i, random.nextInt(4));
+	}
+
+	// Direction d in 0..3 is one of +x, -x, +y, -y
+	public void setDirection(int i, int d) {
+		vX[i] = DX[d];
+		vY[i] = DY[d];
+	}
+
+	public void setXY(int i, int newX, int newY) {
+		x[i] = newX;
+		y[i] = newY;
+	}
+
+	public int getX(int i) {
+		return x[i];
+	}
+
+	public int getY(int i) {
+		return y[i];
+	}
+
+	public int getVX(int i) {
+		return vX[i];
+	}
+
+	public int getVY(int i) {
+		return vY[i];
+	}
+
+	public int getEnergy(int i) {
+		return energy[i];
+	}
+
+	public void setEnergy(int i, int value) {
+		histogram[binOf(energy[i])]--;
+		histogram[binOf(value)]++;
+		energy[i] = value;
+	}
+
+	public void addEnergy(int i, int amount) {
+		setEnergy(i, energy[i] + amount);
+	}
+
+	/**
+	 * Sets the energy without touching the histogram, for parallel writers
+	 * that collect their histogram changes and apply them with
+	 * applyHistogramDelta afterwards.
+	 */
+	public void setEnergyUncounted(int i, int value) {
+		energy[i] = value;
+	}
+
+	public void applyHistogramDelta(int[] delta, int offset) {
+		for (int b = 0; b < histogram.length; b++) {
+			histogram[b] += delta[offset + b];
+			delta[offset + b] = 0;
+		}
+	}
+
+	// Rabbits at or below 0 energy (not reaped yet) fall in the first bin
+	public int binOf(int value) {
+		return value <= 0 ? 0 : Math.min(value / binWidth, histogram.length - 1);
+	}
+
+	public int[] getEnergyHistogram() {
+		return histogram;
+	}
+
+	public int getNumBins() {
+		return histogram.length;
+	}
+
+	public int getBinWidth() {
+		return binWidth;
+	}
+
+	/**
+	 * Sets the number of rabbits, growing the arrays if needed, for bulk
+	 * copies such as checkpoints that then fill the arrays directly and
+	 * call recountHistogram.
+	 */
+	public void resize(int newSize) {
+		while (x.length < newSize) {
+			grow();
+		}
+
+		size = newSize;
+	}
+
+	public void recountHistogram() {
+		Arrays.fill(histogram, 0);
+
+		for (int i = 0; i < size; i++) {
+			histogram[binOf(energy[i])]++;
+		}
+	}
+
+	// Direct access for bulk copies, valid up to size()
+	public int[] getXArray() {
+		return x;
+	}
+
+	public int[] getYArray() {
+		return y;
+	}
+
+	public int[] getVXArray() {
+		return vX;
+	}
+
+	public int[] getVYArray() {
+		return vY;
+	}
+
+	public int[] getEnergyArray() {
+		return energy;
+	}
+
+	private void grow() {
+		int capacity = x.length * 2;
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		vX = Arrays.copyOf(vX, capacity);
+		vY = Arrays.copyOf(vY, capacity);
+		energy = Arrays.copyOf(energy, capacity);
+	}
+}
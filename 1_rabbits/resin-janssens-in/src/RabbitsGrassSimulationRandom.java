@@ -0,0 +1,149 @@
+/**
+ * Class that implements the random streams of the rabbits grass
+ * simulation (the SplitMix64 generator). Every phase of a tick reseeds its
+ * own stream from (seed, tick, phase), so do tiles from (seed, tick, tile),
+ * and per-rabbit draws are hashed from (seed, tick, slot), so no stream
+ * is shared between threads and any tick can be replayed from the seed.
+ * @author
+ */
+
+public class RabbitsGrassSimulationRandom {
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private static final double[] STIRLING_TAIL = { 0.0810614667953272, 0.0413406959554092, 0.0276779256849983,
+			0.02079067210376509, 0.0166446911898211, 0.0138761288230707, 0.0118967099458917, 0.0104112652619720,
+			0.00925546218271273, 0.00833056343336287 };
+
+	private long state;
+
+	public RabbitsGrassSimulationRandom(long seed) {
+		this.state = seed;
+	}
+
+	// Restarts the stream of one phase of one tick, without allocating
+	public void reseed(long seed, int tick, long phase) {
+		state = hash(seed, tick, 0, phase);
+	}
+
+	public long nextLong() {
+		return mix64(nextSeed());
+	}
+
+	public int nextInt() {
+		return (int) (mix64(nextSeed()) >>> 32);
+	}
+
+	// Uniform in [0, bound), bound > 0
+	public int nextInt(int bound) {
+		int r = nextInt() >>> 1;
+		int m = bound - 1;
+
+		if ((bound & m) == 0)
+			return (int) ((bound * (long) r) >> 31);
+
+		for (int u = r; u - (r = u % bound) + m < 0; u = nextInt() >>> 1)
+			;
+
+		return r;
+	}
+
+	// Uniform in [0, 1)
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * Binomial(n, p) variate in expected constant time: inversion when the
+	 * mean is small, otherwise Hormann's transformed rejection (BTRS).
+	 */
+	public int nextBinomial(int n, double p) {
+		if (n <= 0 || p <= 0)
+			return 0;
+
+		if (p >= 1)
+			return n;
+
+		if (p > 0.5)
+			return n - nextBinomial(n, 1 - p);
+
+		if (n * p < 10)
+			return binomialInversion(n, p);
+
+		return binomialRejection(n, p);
+	}
+
+	private int binomialInversion(int n, double p) {
+		double q = 1 - p;
+		double s = p / q;
+		double a = (n + 1) * s;
+		double r = Math.pow(q, n);
+		double u = nextDouble();
+		int x = 0;
+
+		while (u > r && x < n) {
+			u -= r;
+			x++;
+			r *= a / x - s;
+		}
+
+		return x;
+	}
+
+	private int binomialRejection(int n, double p) {
+		double q = 1 - p;
+		double spq = Math.sqrt(n * p * q);
+		double b = 1.15 + 2.53 * spq;
+		double a = -0.0873 + 0.0248 * b + 0.01 * p;
+		double c = n * p + 0.5;
+		double vr = 0.92 - 4.2 / b;
+		double r = p / q;
+		double alpha = (2.83 + 5.1 / b) * spq;
+		double m = Math.floor((n + 1) * p);
+
+		while (true) {
+			double u = nextDouble() - 0.5;
+			double v = nextDouble();
+			double us = 0.5 - Math.abs(u);
+			double k = Math.floor((2 * a / us + b) * u + c);
+
+			if (k < 0 || k > n)
+				continue;
+
+			if (us >= 0.07 && v <= vr)
+				return (int) k;
+
+			v = Math.log(v * alpha / (a / (us * us) + b));
+			double bound = (m + 0.5) * Math.log((m + 1) / (r * (n - m + 1)))
+					+ (n + 1) * Math.log((n - m + 1) / (n - k + 1))
+					+ (k + 0.5) * Math.log(r * (n - k + 1) / (k + 1))
+					+ stirlingTail(m) + stirlingTail(n - m) - stirlingTail(k) - stirlingTail(n - k);
+
+			if (v <= bound)
+				return (int) k;
+		}
+	}
+
+	// log(k!) minus its Stirling approximation
+	private static double stirlingTail(double k) {
+		if (k <= 9)
+			return STIRLING_TAIL[(int) k];
+
+		double kp1sq = (k + 1) * (k + 1);
+		return (1.0 / 12 - (1.0 / 360 - 1.0 / 1260 / kp1sq) / kp1sq) / (k + 1);
+	}
+
+	// Counter-based draw for one rabbit (or cell) of one phase of one tick
+	public static long hash(long seed, int tick, int slot, long salt) {
+		return mix64(seed + tick * GOLDEN_GAMMA + slot * 0xc2b2ae3d27d4eb4fL + salt * 0x165667b19e3779f9L);
+	}
+
+	private long nextSeed() {
+		return state += GOLDEN_GAMMA;
+	}
+
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
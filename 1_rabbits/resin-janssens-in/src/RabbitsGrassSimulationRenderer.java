@@ -0,0 +1,237 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import uchicago.src.sim.gui.DisplaySurface;
+
+/**
+ * Class that renders the rabbits grass simulation off the simulation
+ * thread. After a tick the simulation thread calls tickDone, which takes a
+ * snapshot of the world at most maxFps times per second and only when the
+ * previous frame has been picked up, skipping frames otherwise. The render
+ * thread copies the snapshot into a small space of its own, which is what
+ * the displays show, and repaints the DisplaySurface while the simulation
+ * goes on.
+ *
+ * Worlds larger than displaySize cells a side are downsampled by an integer
+ * factor: a display cell shows the mean grass of up to SAMPLES x SAMPLES
+ * evenly spaced cells of its block, rounded up so that any grass shows, and
+ * one of the rabbits of the block. With maxFps at 0, every tick is
+ * rendered on the simulation thread, as before.
+ * @author
+ */
+
+public class RabbitsGrassSimulationRenderer implements Runnable {
+	private static final int SAMPLES = 4;
+
+	private RabbitsGrassSimulationWorld world;
+	private RabbitsGrassSimulationPopulation population;
+	private DisplaySurface displaySurf;
+	private int factor;
+	private int size;
+	private int step;
+	private long frameInterval;
+	private long nextFrame;
+
+	// Snapshot, written by the simulation thread while no frame is pending
+	private int[] grass;
+	private int[] rabbitX;
+	private int[] rabbitY;
+	private int[] rabbitEnergy;
+	private int numRabbits;
+	private int[] cellStamp;
+	private int stamp;
+
+	// What the displays show, only written by the render thread
+	private RabbitsGrassSimulationPopulation frontPopulation;
+	private RabbitsGrassSimulationSpace frontSpace;
+	private ArrayList<RabbitsGrassSimulationAgent> agentList;
+
+	private boolean pending;
+	private boolean running;
+	private Thread thread;
+
+	public RabbitsGrassSimulationRenderer(RabbitsGrassSimulationWorld world, DisplaySurface displaySurf, int displaySize, int maxFps) {
+		this.world = world;
+		this.population = world.getPopulation();
+		this.displaySurf = displaySurf;
+		int gridSize = world.getSizeX();
+		factor = Math.max(1, (gridSize + displaySize - 1) / displaySize);
+		size = (gridSize + factor - 1) / factor;
+		step = (factor + SAMPLES - 1) / SAMPLES;
+		frameInterval = maxFps > 0 ? 1000000000L / maxFps : 0;
+		nextFrame = 0;
+
+		grass = new int[size * size];
+		rabbitX = new int[16];
+		rabbitY = new int[16];
+		rabbitEnergy = new int[16];
+		cellStamp = new int[size * size];
+		stamp = 0;
+
+		frontPopulation = new RabbitsGrassSimulationPopulation(16, 1, 1);
+		frontSpace = new RabbitsGrassSimulationSpace(size, 1, frontPopulation);
+		agentList = new ArrayList<RabbitsGrassSimulationAgent>();
+
+		// The first frame is ready before the displays are built
+		takeSnapshot();
+		copySnapshot();
+		pending = false;
+		running = false;
+	}
+
+	// Starts the render thread, unless every tick is rendered in place
+	public void start() {
+		if (frameInterval == 0)
+			return;
+
+		running = true;
+		thread = new Thread(this, "Rabbits renderer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void shutdown() {
+		synchronized (this) {
+			running = false;
+			notifyAll();
+		}
+	}
+
+	// Called by the simulation thread after each tick
+	public void tickDone() {
+		if (frameInterval == 0) {
+			takeSnapshot();
+			copySnapshot();
+			displaySurf.updateDisplay();
+			return;
+		}
+
+		long now = System.nanoTime();
+
+		if (now < nextFrame)
+			return;
+
+		synchronized (this) {
+			if (pending)
+				return;
+		}
+
+		takeSnapshot();
+		nextFrame = now + frameInterval;
+
+		synchronized (this) {
+			pending = true;
+			notifyAll();
+		}
+	}
+
+	public void run() {
+		while (true) {
+			synchronized (this) {
+				while (!pending && running) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+
+				if (!running)
+					return;
+			}
+
+			copySnapshot();
+
+			// The simulation may take the next snapshot while this one is painted
+			synchronized (this) {
+				pending = false;
+			}
+
+			displaySurf.updateDisplay();
+		}
+	}
+
+	private void takeSnapshot() {
+		int gridSize = world.getSizeX();
+		for (int by = 0; by < size; by++) {
+			for (int bx = 0; bx < size; bx++) {
+				long sum = 0;
+				int samples = 0;
+
+				for (int y = by * factor; y < Math.min((by + 1) * factor, gridSize); y += step) {
+					for (int x = bx * factor; x < Math.min((bx + 1) * factor, gridSize); x += step) {
+						sum += world.getGrassUnitsAt(x, y);
+						samples++;
+					}
+				}
+
+				grass[bx + by * size] = (int) ((sum + samples - 1) / samples);
+			}
+		}
+
+		// One rabbit per display cell, told apart from older frames by the stamp
+		stamp++;
+		numRabbits = 0;
+
+		for (int i = 0; i < population.size(); i++) {
+			int x = population.getX(i) / factor;
+			int y = population.getY(i) / factor;
+
+			if (cellStamp[x + y * size] == stamp)
+				continue;
+
+			cellStamp[x + y * size] = stamp;
+
+			if (numRabbits == rabbitX.length) {
+				rabbitX = Arrays.copyOf(rabbitX, numRabbits * 2);
+				rabbitY = Arrays.copyOf(rabbitY, numRabbits * 2);
+				rabbitEnergy = Arrays.copyOf(rabbitEnergy, numRabbits * 2);
+			}
+
+			rabbitX[numRabbits] = x;
+			rabbitY[numRabbits] = y;
+			rabbitEnergy[numRabbits] = population.getEnergy(i);
+			numRabbits++;
+		}
+	}
+
+	private void copySnapshot() {
+		RabbitsGrassSimulationGrassField field = frontSpace.getGrassField();
+		int[] frontGrass = field.getGrass();
+		long total = 0;
+
+		for (int i = 0; i < grass.length; i++) {
+			frontGrass[i] = grass[i];
+			total += grass[i];
+		}
+
+		field.adjustTotal(total - field.getTotalGrass());
+
+		frontPopulation.resize(numRabbits);
+		System.arraycopy(rabbitX, 0, frontPopulation.getXArray(), 0, numRabbits);
+		System.arraycopy(rabbitY, 0, frontPopulation.getYArray(), 0, numRabbits);
+		System.arraycopy(rabbitEnergy, 0, frontPopulation.getEnergyArray(), 0, numRabbits);
+		frontPopulation.recountHistogram();
+		// Only the cells of the rabbits matter to the displays, so no free cell is listed
+		frontSpace.restoreFreeCells(0);
+
+		for (int i = 0; i < numRabbits; i++) {
+			if (i < agentList.size())
+				agentList.get(i).copyFrom(frontPopulation, i);
+			else
+				agentList.add(new RabbitsGrassSimulationAgent(frontPopulation, i));
+		}
+
+		if (agentList.size() > numRabbits)
+			agentList.subList(numRabbits, agentList.size()).clear();
+	}
+
+	// The space the displays are built on
+	public RabbitsGrassSimulationSpace getSpace() {
+		return frontSpace;
+	}
+
+	public ArrayList<RabbitsGrassSimulationAgent> getAgentList() {
+		return agentList;
+	}
+}
@@ -0,0 +1,131 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Class that records the statistics time series of one run of the rabbits
+ * grass simulation: rabbits, total grass, births, deaths and the energy
+ * histogram after each tick. Every value is read from the running
+ * aggregates of the engine, so a sample costs O(bins) whatever the size of
+ * the world, and the series can be written as a compact binary file or as
+ * CSV.
+ *
+ * Binary layout (big endian, gzip compressed): the magic "RGS2", the number
+ * of parameters followed by their values, the number of bins and the bin
+ * width, the number of samples, then for each sample the tick, rabbits,
+ * grass (long), births, deaths and one count per bin.
+ * @author
+ */
+
+public class RabbitsGrassSimulationSeries {
+	private static final int MAGIC = 0x52475332;
+
+	private int[] params;
+	private int numBins;
+	private int binWidth;
+	private int[] ticks;
+	private int[] rabbits;
+	private long[] grass;
+	private int[] births;
+	private int[] deaths;
+	private int[] histograms;
+	private int length;
+
+	public RabbitsGrassSimulationSeries(int[] params, int numBins, int binWidth, int expectedTicks) {
+		this.params = params;
+		this.numBins = numBins;
+		this.binWidth = binWidth;
+		int capacity = Math.max(expectedTicks, 16);
+		ticks = new int[capacity];
+		rabbits = new int[capacity];
+		grass = new long[capacity];
+		births = new int[capacity];
+		deaths = new int[capacity];
+		histograms = new int[capacity * numBins];
+		length = 0;
+	}
+
+	public void record(RabbitsGrassSimulationEngine engine) {
+		if (length == ticks.length) {
+			int capacity = length * 2;
+			ticks = Arrays.copyOf(ticks, capacity);
+			rabbits = Arrays.copyOf(rabbits, capacity);
+			grass = Arrays.copyOf(grass, capacity);
+			births = Arrays.copyOf(births, capacity);
+			deaths = Arrays.copyOf(deaths, capacity);
+			histograms = Arrays.copyOf(histograms, capacity * numBins);
+		}
+
+		ticks[length] = engine.getTickCount();
+		rabbits[length] = engine.getNumRabbits();
+		grass[length] = engine.getTotalGrass();
+		births[length] = engine.getBirths();
+		deaths[length] = engine.getDeaths();
+		System.arraycopy(engine.getPopulation().getEnergyHistogram(), 0, histograms, length * numBins, numBins);
+		length++;
+	}
+
+	public void write(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))));
+
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(params.length);
+
+			for (int i = 0; i < params.length; i++) {
+				out.writeInt(params[i]);
+			}
+
+			out.writeInt(numBins);
+			out.writeInt(binWidth);
+			out.writeInt(length);
+
+			for (int i = 0; i < length; i++) {
+				out.writeInt(ticks[i]);
+				out.writeInt(rabbits[i]);
+				out.writeLong(grass[i]);
+				out.writeInt(births[i]);
+				out.writeInt(deaths[i]);
+
+				for (int b = 0; b < numBins; b++) {
+					out.writeInt(histograms[i * numBins + b]);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	public void writeCsv(File file) throws IOException {
+		PrintWriter out = new PrintWriter(file);
+
+		try {
+			StringBuilder line = new StringBuilder("Tick,Rabbits,Grass,Births,Deaths");
+
+			for (int b = 0; b < numBins; b++) {
+				line.append(",E").append(b * binWidth);
+			}
+
+			out.println(line);
+
+			for (int i = 0; i < length; i++) {
+				line.setLength(0);
+				line.append(ticks[i]).append(',').append(rabbits[i]).append(',').append(grass[i]);
+				line.append(',').append(births[i]).append(',').append(deaths[i]);
+
+				for (int b = 0; b < numBins; b++) {
+					line.append(',').append(histograms[i * numBins + b]);
+				}
+
+				out.println(line);
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -1,129 +1,200 @@
-import uchicago.src.sim.space.Object2DGrid;
+import java.util.Arrays;
+
+import uchicago.src.sim.space.Discrete2DSpace;
 
 /**
  * Class that implements the simulation space of the rabbits grass simulation.
- * @author 
+ * Rabbits are referred to by their slot in the RabbitsGrassSimulationPopulation;
+ * each cell holds the slot of the rabbit standing on it, or -1. The free
+ * cells are also kept in an indexable list, so a rabbit is placed on a
+ * uniformly random free cell in constant time.
+ * @author
  */
 
-public class RabbitsGrassSimulationSpace {
-	private Object2DGrid rgsSpace;
-	private Object2DGrid agentSpace;
+public class RabbitsGrassSimulationSpace implements RabbitsGrassSimulationWorld {
+	private RabbitsGrassSimulationGrassField rgsSpace;
+	private RabbitsGrassSimulationGrassDisplay rgsDisplay;
+	private int[] agentSpace;
+	private int[] freeCells;
+	private int[] freeIndex;
+	private int freeCount;
+	private RabbitsGrassSimulationAgentDisplay agentDisplay;
+	private RabbitsGrassSimulationPopulation population;
+	private int sizeX;
+	private int sizeY;
 	private int energyFactor;
 	
-	public RabbitsGrassSimulationSpace(int gridSize, int energyFactor) {
-		rgsSpace = new Object2DGrid(gridSize, gridSize);
-		agentSpace = new Object2DGrid(gridSize, gridSize);
-		this.energyFactor = energyFactor;
+	public RabbitsGrassSimulationSpace(int gridSize, int energyFactor, RabbitsGrassSimulationPopulation population) {
+		rgsSpace = new RabbitsGrassSimulationGrassField(gridSize, gridSize);
+		rgsDisplay = new RabbitsGrassSimulationGrassDisplay(rgsSpace);
+		agentSpace = new int[gridSize * gridSize];
+		Arrays.fill(agentSpace, -1);
+		freeCells = new int[gridSize * gridSize];
+		freeIndex = new int[gridSize * gridSize];
+		freeCount = gridSize * gridSize;
 		
-		for (int i = 0; i < gridSize; i++) {
-			for (int j = 0; j < gridSize; j++) {
-				rgsSpace.putObjectAt(i, j, 0);
-			}
+		for (int i = 0; i < freeCount; i++) {
+			freeCells[i] = i;
+			freeIndex[i] = i;
 		}
+		
+		agentDisplay = new RabbitsGrassSimulationAgentDisplay(this);
+		this.population = population;
+		this.sizeX = gridSize;
+		this.sizeY = gridSize;
+		this.energyFactor = energyFactor;
 	}
 	
-	public void spreadGrass(int grass) {
-		for (int i = 0; i < grass; i++) {
-			int x = (int) (Math.random() * rgsSpace.getSizeX());
-			int y = (int) (Math.random() * rgsSpace.getSizeY());
-			
-			int currentValue = getGrassAt(x, y);
-			rgsSpace.putObjectAt(x, y, currentValue + 1);
-		}
+	public int getGrassAt(int x, int y) {
+		return rgsSpace.getGrassAt(x, y) * energyFactor;
 	}
 	
-	public int getGrassAt(int x, int y) {
-		int i;
-		
-		if (rgsSpace.getObjectAt(x, y) != null)
-			i = ((Integer) rgsSpace.getObjectAt(x, y)).intValue();
-		else
-			i = 0;
-		
-		return i * energyFactor;
+	public int getGrassUnitsAt(int x, int y) {
+		return rgsSpace.getGrassAt(x, y);
 	}
 	
-	public RabbitsGrassSimulationAgent getAgentAt(int x, int y) {
-		RabbitsGrassSimulationAgent retVal = null;
-		
-		if (agentSpace.getObjectAt(x, y) != null)
-			retVal = (RabbitsGrassSimulationAgent) agentSpace.getObjectAt(x, y);
-		
-		return retVal;
+	// Slot of the rabbit at (x, y), or -1 if the cell is free
+	public int getAgentAt(int x, int y) {
+		return agentSpace[x + y * sizeX];
 	}
 	
-	public Object2DGrid getCurrentRGSSpace() {
+	public int getAgentAtCell(int cell) {
+		return agentSpace[cell];
+	}
+	
+	public Discrete2DSpace getCurrentRGSSpace() {
+		return rgsDisplay;
+	}
+	
+	public RabbitsGrassSimulationGrassField getGrassField() {
 		return rgsSpace;
 	}
 	
-	public Object2DGrid getCurrentAgentSpace() {
-		return agentSpace;
+	public Discrete2DSpace getCurrentAgentSpace() {
+		return agentDisplay;
+	}
+	
+	public RabbitsGrassSimulationPopulation getPopulation() {
+		return population;
+	}
+	
+	public int getEnergyFactor() {
+		return energyFactor;
+	}
+	
+	public int getSizeX() {
+		return sizeX;
+	}
+	
+	public int getSizeY() {
+		return sizeY;
 	}
 	
 	public boolean isCellOccupied(int x, int y) {
-		boolean retVal = false;
+		return agentSpace[x + y * sizeX] >= 0;
+	}
 	
-		if (agentSpace.getObjectAt(x, y) != null)
-			retVal = true;
-		
-		return retVal;
+	public int getFreeCellCount() {
+		return freeCount;
 	}
 	
-	public boolean addAgent(RabbitsGrassSimulationAgent agent) {
-		boolean retVal = false;
-		int count = 0;
-		int countLimit = 10 * agentSpace.getSizeX() * agentSpace.getSizeY();
+	// Places the rabbit on a uniformly random free cell, returns false only if the grid is full
+	public boolean addAgent(int slot, RabbitsGrassSimulationRandom random) {
+		if (freeCount == 0)
+			return false;
 		
-		while ((retVal == false) && (count < countLimit)) {
-			int x = (int) (Math.random() * agentSpace.getSizeX());
-			int y = (int) (Math.random() * agentSpace.getSizeY());
-			
-			if (isCellOccupied(x, y) == false) {
-				agentSpace.putObjectAt(x, y, agent);
-				agent.setXY(x, y);
-				agent.setRabbitsGrassSimulationSpace(this);
-				retVal = true;
-			}
-			
-			count++;
-		}
-		
-		return retVal;
+		int cell = freeCells[random.nextInt(freeCount)];
+		occupy(cell, slot);
+		population.setXY(slot, cell % sizeX, cell / sizeX);
+		return true;
 	}
 	
 	public void removeAgentAt(int x, int y) {
-		agentSpace.putObjectAt(x, y, null);
+		vacate(x + y * sizeX);
+	}
+	
+	// Called when the population moved the rabbit at (x, y) to another slot
+	public void relabelAgentAt(int x, int y, int slot) {
+		agentSpace[x + y * sizeX] = slot;
 	}
 	
 	public int takeGrassAt(int x, int y) {
-		int grass = getGrassAt(x, y);
-		rgsSpace.putObjectAt(x, y, 0);
-		return grass;
+		return rgsSpace.takeGrassAt(x, y) * energyFactor;
 	}
 	
 	public boolean moveAgentAt(int x, int y, int newX, int newY) {
 		boolean retVal = false;
 		
 		if (!isCellOccupied(newX, newY)) {
-			RabbitsGrassSimulationAgent rgsa = (RabbitsGrassSimulationAgent) agentSpace.getObjectAt(x, y);
+			int slot = agentSpace[x + y * sizeX];
 			removeAgentAt(x, y);
-			rgsa.setXY(newX,  newY);
-			agentSpace.putObjectAt(newX, newY, rgsa);
+			population.setXY(slot, newX, newY);
+			occupy(newX + newY * sizeX, slot);
 			retVal = true;
 		}
 		
 		return retVal;
 	}
 	
-	public int getTotalGrass() {
-		int totalGrass = 0;
+	/**
+	 * Moves the rabbit on cell to the free cell newCell. The old cell takes
+	 * the place of the new one in the free list, so calls for distinct cells
+	 * touch distinct entries and may run concurrently.
+	 */
+	public void relocateAgent(int cell, int newCell) {
+		int slot = agentSpace[cell];
+		int i = freeIndex[newCell];
+		freeCells[i] = cell;
+		freeIndex[cell] = i;
+		freeIndex[newCell] = -1;
+		agentSpace[cell] = -1;
+		agentSpace[newCell] = slot;
+		population.setXY(slot, newCell % sizeX, newCell / sizeX);
+	}
+	
+	// Direct access for bulk copies, valid up to getFreeCellCount()
+	public int[] getFreeCells() {
+		return freeCells;
+	}
+	
+	/**
+	 * Rebuilds the space after getFreeCells() was filled in bulk with count
+	 * free cells, in their saved order, and the population was restored.
+	 */
+	public void restoreFreeCells(int count) {
+		freeCount = count;
+		Arrays.fill(freeIndex, -1);
+		Arrays.fill(agentSpace, -1);
 		
-		for (int i = 0; i < agentSpace.getSizeX(); i++) {
-			for (int j = 0; j < agentSpace.getSizeY(); j++) {
-				totalGrass += getGrassAt(i, j);
-			}
+		for (int i = 0; i < count; i++) {
+			freeIndex[freeCells[i]] = i;
 		}
 		
-		return totalGrass;
+		for (int slot = 0; slot < population.size(); slot++) {
+			agentSpace[population.getX(slot) + population.getY(slot) * sizeX] = slot;
+		}
+	}
+	
+	// Removes the cell from the free list by moving the last free cell into its place
+	private void occupy(int cell, int slot) {
+		int i = freeIndex[cell];
+		int last = freeCells[--freeCount];
+		freeCells[i] = last;
+		freeIndex[last] = i;
+		freeIndex[cell] = -1;
+		agentSpace[cell] = slot;
+	}
+	
+	private void vacate(int cell) {
+		if (agentSpace[cell] < 0)
+			return;
+		
+		freeCells[freeCount] = cell;
+		freeIndex[cell] = freeCount++;
+		agentSpace[cell] = -1;
+	}
+	
+	public long getTotalGrass() {
+		return rgsSpace.getTotalGrass() * energyFactor;
 	}
 }
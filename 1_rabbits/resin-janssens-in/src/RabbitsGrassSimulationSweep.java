@@ -0,0 +1,195 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Class that sweeps the parameters of the rabbits grass simulation without
+ * any GUI. Every combination of the given parameter values is run on a
+ * headless RabbitsGrassSimulationEngine, spread over all cores, and each
+ * run writes its time series to its own file in the output directory,
+ * as gzipped binary or, with Format=csv, as CSV. ChunkSize=n runs every
+ * point on a sparse world of n x n chunks, for grids too large to store.
+ * From=file resumes every run from a RabbitsGrassSimulationCheckpoint
+ * instead of building it, to fork experiments from one warmed-up state:
+ * the checkpoint's parameters are used and only the Seed values apply.
+ *
+ * Usage: RabbitsGrassSimulationSweep Ticks=1000 Out=runs GridSize=20,40,80 GrassGrowthRate=50:500:50 ...
+ * Parameters take a comma separated list or a from:to:step range, and
+ * default to the values of RabbitsGrassSimulationModel. Seed defaults to 0,
+ * so a sweep is reproducible; give several seeds to replicate each point.
+ * @author
+ */
+
+public class RabbitsGrassSimulationSweep {
+	private static final String[] PARAMS = RabbitsGrassSimulationArguments.PARAMS;
+
+	public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+		int ticks = 1000;
+		int threads = Runtime.getRuntime().availableProcessors();
+		File outDir = new File("sweep");
+		boolean csv = false;
+		int chunkSize = 0;
+		File from = null;
+		int[] defaults = RabbitsGrassSimulationArguments.defaults();
+		int[][] values = new int[PARAMS.length][];
+
+		for (int i = 0; i < PARAMS.length; i++) {
+			values[i] = new int[] { defaults[i] };
+		}
+
+		for (Map.Entry<String, String> option : RabbitsGrassSimulationArguments.parse(args).entrySet()) {
+			String name = option.getKey();
+			String value = option.getValue();
+
+			if (name.equals("Ticks"))
+				ticks = Integer.parseInt(value);
+			else if (name.equals("Threads"))
+				threads = Integer.parseInt(value);
+			else if (name.equals("Out"))
+				outDir = new File(value);
+			else if (name.equals("Format"))
+				csv = value.equalsIgnoreCase("csv");
+			else if (name.equals("ChunkSize"))
+				chunkSize = Integer.parseInt(value);
+			else if (name.equals("From"))
+				from = new File(value);
+			else
+				values[RabbitsGrassSimulationArguments.indexOf(name)] = RabbitsGrassSimulationArguments.parseInts(value);
+		}
+
+		// The index lists the parameters the runs actually use
+		if (from != null) {
+			int[] params = RabbitsGrassSimulationCheckpoint.readParameters(from);
+
+			for (int i = 0; i < params.length; i++) {
+				values[i] = new int[] { params[i] };
+			}
+		}
+
+		List<int[]> runs = new ArrayList<int[]>();
+		expand(values, 0, new int[PARAMS.length], runs);
+
+		outDir.mkdirs();
+		writeIndex(new File(outDir, "sweep.csv"), runs);
+		System.out.println("Running " + runs.size() + " runs of " + ticks + " ticks on " + threads + " threads");
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<File>> results = new ArrayList<Future<File>>();
+
+		try {
+			for (int i = 0; i < runs.size(); i++) {
+				results.add(pool.submit(new Run(i, runs.get(i), ticks, outDir, csv, chunkSize, from)));
+			}
+
+			for (Future<File> result : results) {
+				System.out.println("Wrote " + result.get());
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static class Run implements Callable<File> {
+		private int id;
+		private int[] params;
+		private int ticks;
+		private File outDir;
+		private boolean csv;
+		private int chunkSize;
+		private File from;
+
+		public Run(int id, int[] params, int ticks, File outDir, boolean csv, int chunkSize, File from) {
+			this.id = id;
+			this.params = params;
+			this.ticks = ticks;
+			this.outDir = outDir;
+			this.csv = csv;
+			this.chunkSize = chunkSize;
+			this.from = from;
+		}
+
+		public File call() throws IOException {
+			RabbitsGrassSimulationEngine engine;
+
+			if (from != null) {
+				engine = RabbitsGrassSimulationCheckpoint.read(from, 0);
+				engine.setSeed(params[7]);
+			} else {
+				engine = new RabbitsGrassSimulationEngine(params[0], params[1], params[2], params[3], params[4], params[5],
+						params[6]);
+				engine.setSeed(params[7]);
+				engine.setChunkSize(chunkSize);
+				engine.buildModel();
+			}
+
+			// Same results as the unfused tick, with fewer passes
+			engine.setFusedTick(true);
+			RabbitsGrassSimulationSeries series = new RabbitsGrassSimulationSeries(params, engine.getPopulation().getNumBins(),
+					engine.getPopulation().getBinWidth(), ticks + 1);
+			series.record(engine);
+
+			for (int t = 0; t < ticks; t++) {
+				engine.tick();
+				series.record(engine);
+			}
+
+			File file;
+
+			if (csv) {
+				file = new File(outDir, String.format("run-%05d.csv", id));
+				series.writeCsv(file);
+			} else {
+				file = new File(outDir, String.format("run-%05d.rgs.gz", id));
+				series.write(file);
+			}
+
+			return file;
+		}
+	}
+
+	private static void expand(int[][] values, int param, int[] current, List<int[]> runs) {
+		if (param == values.length) {
+			runs.add(current.clone());
+			return;
+		}
+
+		for (int v : values[param]) {
+			current[param] = v;
+			expand(values, param + 1, current, runs);
+		}
+	}
+
+	private static void writeIndex(File file, List<int[]> runs) throws IOException {
+		PrintWriter out = new PrintWriter(file);
+
+		try {
+			StringBuilder header = new StringBuilder("Run");
+
+			for (String name : PARAMS) {
+				header.append(',').append(name);
+			}
+
+			out.println(header);
+
+			for (int i = 0; i < runs.size(); i++) {
+				StringBuilder line = new StringBuilder(String.valueOf(i));
+
+				for (int v : runs.get(i)) {
+					line.append(',').append(v);
+				}
+
+				out.println(line);
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
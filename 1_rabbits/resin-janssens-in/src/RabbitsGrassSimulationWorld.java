@@ -0,0 +1,42 @@
+/**
+ * Interface of the worlds the rabbits grass simulation can run on: the
+ * dense RabbitsGrassSimulationSpace and the sparse, chunked
+ * RabbitsGrassSimulationChunkedSpace. Rabbits are referred to by their slot
+ * in the RabbitsGrassSimulationPopulation, and grass is read and taken in
+ * energy, that is units times the energy factor.
+ * @author
+ */
+
+public interface RabbitsGrassSimulationWorld {
+	public int getSizeX();
+
+	public int getSizeY();
+
+	public RabbitsGrassSimulationPopulation getPopulation();
+
+	public int getEnergyFactor();
+
+	public int getGrassAt(int x, int y);
+
+	// Grass at (x, y) in units, which the energy factor may turn to 0
+	public int getGrassUnitsAt(int x, int y);
+
+	public int takeGrassAt(int x, int y);
+
+	public long getTotalGrass();
+
+	// Slot of the rabbit at (x, y), or -1 if the cell is free
+	public int getAgentAt(int x, int y);
+
+	public boolean isCellOccupied(int x, int y);
+
+	// Places the rabbit on a uniformly random free cell, returns false only if the grid is full
+	public boolean addAgent(int slot, RabbitsGrassSimulationRandom random);
+
+	public void removeAgentAt(int x, int y);
+
+	// Called when the population moved the rabbit at (x, y) to another slot
+	public void relabelAgentAt(int x, int y, int slot);
+
+	public boolean moveAgentAt(int x, int y, int newX, int newY);
+}
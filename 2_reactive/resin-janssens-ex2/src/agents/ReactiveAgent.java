@@ -1,8 +1,11 @@
 package agents;
 
-import java.util.Map;
-import java.util.HashMap;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 
 import logist.simulation.Vehicle;
 import logist.agent.Agent;
@@ -16,17 +19,46 @@ import logist.topology.Topology;
 import logist.topology.Topology.City;
 import datatypes.MyAction;
 import datatypes.MyState;
+import solvers.BatchValueIteration;
+import solvers.GaussSeidel;
+import solvers.ImplicitValueIteration;
+import solvers.LargeModel;
+import solvers.Model;
+import solvers.ParallelValueIteration;
+import solvers.Policy;
+import solvers.PolicyCache;
+import solvers.PolicyIteration;
+import solvers.PolicyRegistry;
+import solvers.PrioritizedSweeping;
+import solvers.QLearning;
+import solvers.ValueIteration;
 
 public class ReactiveAgent implements ReactiveBehavior {
 
+	enum Solver { VALUE_ITERATION, GAUSS_SEIDEL, PRIORITIZED_SWEEPING, POLICY_ITERATION, Q_LEARNING }
+
+	// Transitions kept for replay in the Q_LEARNING mode
+	private static final int REPLAY_CAPACITY = 1 << 16;
+
 	private Random random;
 	private int numActions;
 	private Agent myAgent;
 	private TaskDistribution td;
 	private double numSkippedActions = 0.0;
-	private Map<MyState, Double> V;
-	private Map<MyState, MyAction> Best;
+	private Topology topology;
+	private Policy policy;
 	private double dF;
+	private int threads;
+	private Solver solver;
+	private double threshold;
+	private PolicyCache cache;
+	private double[] discounts;
+	private boolean largeTopology;
+	private QLearning learner;
+	// The last transition of the Q_LEARNING mode, learned from at the next decision
+	private int lastState = -1;
+	private MyAction lastAction;
+	private double lastProfit;
 
 	@Override
 	public void setup(Topology topology, TaskDistribution td, Agent agent) {
@@ -34,78 +66,259 @@ public class ReactiveAgent implements ReactiveBehavior {
 		// Reads the discount factor from the agents.xml file.
 		// If the property is not present it defaults to 0.95
 		Double discount = agent.readProperty("discount-factor", Double.class, 0.95);
+		// Threads of the solver, 0 for one per core
+		Integer threads = agent.readProperty("threads", Integer.class, 1);
+		String solverName = agent.readProperty("solver", String.class, "VALUE_ITERATION");
+		Double threshold = agent.readProperty("threshold", Double.class, 0.0001);
+		// Directory of solved policies, none if empty
+		String cacheName = agent.readProperty("policy-cache", String.class, "");
+		// Discount factors of the other vehicles, solved together with this one if not empty
+		String discountNames = agent.readProperty("discount-factors", String.class, "");
+		// Solves without any array or object per state, for topologies of thousands of cities
+		Boolean largeTopology = agent.readProperty("large-topology", Boolean.class, false);
+		// Step size and probability of a random action in the Q_LEARNING mode
+		Double learningRate = agent.readProperty("learning-rate", Double.class, 0.1);
+		Double exploration = agent.readProperty("exploration", Double.class, 0.1);
+		// Transitions replayed at a time off the decision thread in the Q_LEARNING mode, none if 0
+		Integer replayBatch = agent.readProperty("replay-batch", Integer.class, 0);
 
 		this.random = new Random();
 		this.numActions = 0;
 		this.myAgent = agent;
 		this.td = td;
+		this.topology = topology;
 		this.dF = discount;
+		this.threads = threads == 0 ? Runtime.getRuntime().availableProcessors() : threads;
+		this.threshold = threshold;
+		this.cache = cacheName.isEmpty() ? null : new PolicyCache(new File(cacheName));
+		this.discounts = discountNames.isEmpty() ? null : parseDiscounts(discountNames, discount);
+		this.largeTopology = largeTopology;
+		
+		// Throws IllegalArgumentException if the solver is unknown
+		this.solver = Solver.valueOf(solverName.toUpperCase());
+		
+		// The learner keeps two values per state, which is what large-topology avoids
+		if (largeTopology && solver == Solver.Q_LEARNING)
+			throw new IllegalArgumentException("The Q_LEARNING solver does not support large-topology");
+		
+		// Learns while acting, without the task distribution, so there is nothing to solve
+		if (solver == Solver.Q_LEARNING) {
+			learner = new QLearning(topology.size(), discount, learningRate, exploration, random);
+			
+			if (replayBatch > 0)
+				learner.setReplay(REPLAY_CAPACITY, replayBatch);
+			
+			return;
+		}
+		
+		// A large topology is solved by value iteration on one thread, one discount factor at a time and without cache
+		if (largeTopology) {
+			if (solver != Solver.VALUE_ITERATION)
+				System.out.println("Ignoring solver " + solver + ": large topologies are solved by value iteration");
+			
+			if (this.threads > 1)
+				System.out.println("Ignoring threads " + this.threads + ": large topologies are solved on one thread");
+			
+			if (discounts != null)
+				System.out.println("Ignoring discount-factors: large topologies are solved one discount factor at a time");
+			
+			if (cache != null)
+				System.out.println("Ignoring policy-cache: large topologies keep no values per state to cache");
+			
+			solveLarge(discount);
+			return;
+		}
+		
+		// A batch is solved by value iteration on one thread, whatever the solver and threads
+		if (discounts != null) {
+			if (solver != Solver.VALUE_ITERATION)
+				System.out.println("Ignoring solver " + solver + ": the discount factors are solved together by value iteration");
+			
+			if (this.threads > 1)
+				System.out.println("Ignoring threads " + this.threads + ": the discount factors are solved together on one thread");
+			
+			this.solver = Solver.VALUE_ITERATION;
+			this.threads = 1;
+		}
 		
 		MyState.setStates(topology.cities());
 		reinforcementLearningAlgorithm(discount);
 		printV();
 	}
 	
-	public void reinforcementLearningAlgorithm(double discount) {		
-		double threshold = 0.0001;
-		double max = threshold + 1;
+	private void solveLarge(final double discount) {
+		Vehicle vehicle = myAgent.vehicles().iterator().next();
+		final LargeModel model = new LargeModel(topology, td, vehicle.costPerKm());
+		long start = System.currentTimeMillis();
 		
-		Map<MyState, Double> nextV = new HashMap<MyState, Double>();
-		Map<MyState, Double> currV;
-		Best = new HashMap<MyState, MyAction>();
+		// Keyed apart from the policies of the other modes, which keep values per state
+		policy = PolicyRegistry.get(PolicyCache.key(model.fingerprint(), "large-topology", discount, threshold), new Callable<Policy>() {
+			public Policy call() {
+				long start = System.currentTimeMillis();
+				Policy policy = ImplicitValueIteration.solve(model, discount, threshold);
+				System.out.println("Solved in large-topology mode in " + policy.getSweeps() + " sweeps and " + (System.currentTimeMillis() - start) + " ms");
+				return policy;
+			}
+		});
 		
-		for (MyState state : MyState.getAllStates())
-			nextV.put(state, 0.0);
+		System.out.println("Policy ready after " + (System.currentTimeMillis() - start) + " ms");
+	}
+	
+	public void reinforcementLearningAlgorithm(final double discount) {
+		Vehicle vehicle = myAgent.vehicles().iterator().next();
+		final Model model = new Model(topology, td, vehicle.costPerKm());
+		final long fingerprint = model.fingerprint();
+		long start = System.currentTimeMillis();
+		final long key = PolicyCache.key(fingerprint, solver.name(), discount, threshold);
 		
-		while (max > threshold) {
-			currV = nextV;
-			nextV = new HashMap<MyState, Double>();
-			
-			for (MyState state : MyState.getAllStates())
-				nextV.put(state, 0.0);
-			
-			for (MyState currState : MyState.getAllStates()) {
-				Map<MyAction, Double> Q = new HashMap<MyAction, Double>();
-				
-				for (MyAction action : MyAction.values()) {
-					double value = getReward(currState, action);
+		policy = load(key, model);
+		
+		if (policy != null) {
+			System.out.println("Loaded the policy from the cache in " + (System.currentTimeMillis() - start) + " ms");
+			return;
+		}
+		
+		// Vehicles of this JVM with the same model wait for the first one to solve it
+		if (discounts != null) {
+			Policy[] policies = PolicyRegistry.get(batchKey(fingerprint), new Callable<Policy[]>() {
+				public Policy[] call() {
+					long start = System.currentTimeMillis();
+					Policy[] policies = BatchValueIteration.solve(model, discounts, threshold);
+					int sweeps = 0;
 					
-					for (MyState nextState : MyState.getAllStates()) {
-						double transProb = getTransProb(currState, action, nextState);
-						double nextValue = currV.get(nextState);
-						value += discount * transProb * nextValue;
+					for (int d = 0; d < discounts.length; d++) {
+						sweeps = Math.max(sweeps, policies[d].getSweeps());
+						store(PolicyCache.key(fingerprint, Solver.VALUE_ITERATION.name(), discounts[d], threshold), policies[d]);
 					}
-
-					Q.put(action, value);
 					
-					if(nextV.get(currState) == 0.0 || value > nextV.get(currState)){
-						nextV.put(currState, value);
-						Best.put(currState, action);
-					}
+					System.out.println("Solved " + discounts.length + " discount factors together in " + sweeps + " sweeps and " + (System.currentTimeMillis() - start) + " ms");
 					
+					return policies;
 				}
-			}
+			});
 			
-			max = getMaxVChange(currV, nextV);
+			policy = policies[Arrays.binarySearch(discounts, discount)];
+		} else {
+			policy = PolicyRegistry.get(key, new Callable<Policy>() {
+				public Policy call() {
+					long start = System.currentTimeMillis();
+					Policy policy = solve(model, discount);
+					System.out.println("Solved with " + solver + " in " + policy.getSweeps() + " sweeps and " + (System.currentTimeMillis() - start) + " ms");
+					store(key, policy);
+					return policy;
+				}
+			});
+		}
+		
+		System.out.println("Policy ready after " + (System.currentTimeMillis() - start) + " ms");
+	}
+	
+	// The cached policy of key, or null if there is none or no cache
+	private Policy load(long key, Model model) {
+		if (cache == null)
+			return null;
+		
+		try {
+			return cache.load(key, model.getNumStates());
+		} catch (IOException e) {
+			System.out.println("Cannot read the cached policy: " + e);
+			return null;
+		}
+	}
+	
+	private void store(long key, Policy policy) {
+		if (cache == null)
+			return;
+		
+		try {
+			cache.store(key, policy);
+		} catch (IOException e) {
+			System.out.println("Cannot cache the policy: " + e);
+		}
+	}
+	
+	// The batch is told apart by its discounts, as well as by the model and the threshold
+	private long batchKey(long fingerprint) {
+		long key = PolicyCache.key(fingerprint, Solver.VALUE_ITERATION.name(), discounts.length, threshold);
+		
+		for (double d : discounts) {
+			key = PolicyCache.key(key, Solver.VALUE_ITERATION.name(), d, threshold);
+		}
+		
+		return key;
+	}
+	
+	// The comma-separated discount factors, with the one of this vehicle added if missing
+	private static double[] parseDiscounts(String names, double discount) {
+		String[] parts = names.split(",");
+		double[] discounts = new double[parts.length + 1];
+		int count = 0;
+		boolean found = false;
+		
+		for (String part : parts) {
+			discounts[count] = Double.parseDouble(part.trim());
+			found |= discounts[count] == discount;
+			count++;
 		}
 		
-		V = nextV;
+		if (!found)
+			discounts[count++] = discount;
+		
+		// Sorted, so that vehicles listing them in another order share the batch
+		discounts = Arrays.copyOf(discounts, count);
+		Arrays.sort(discounts);
+		return discounts;
+	}
+	
+	private Policy solve(Model model, double discount) {
+		switch (solver) {
+		case VALUE_ITERATION:
+			// Only plain value iteration is run in parallel
+			if (threads > 1) {
+				ForkJoinPool pool = new ForkJoinPool(threads);
+				
+				try {
+					return ParallelValueIteration.solve(model, discount, threshold, pool);
+				} finally {
+					pool.shutdown();
+				}
+			}
+			
+			return ValueIteration.solve(model, discount, threshold);
+		case GAUSS_SEIDEL:
+			return GaussSeidel.solve(model, discount, threshold);
+		case PRIORITIZED_SWEEPING:
+			return PrioritizedSweeping.solve(model, discount, threshold);
+		case POLICY_ITERATION:
+			return PolicyIteration.solve(model, discount, threshold);
+		default:
+			throw new AssertionError("Should not happen.");
+		}
 	}
 
 	@Override
 	public Action act(Vehicle vehicle, Task availableTask) {
 		Action action;
 		City city = vehicle.getCurrentCity();
-		MyState state = MyState.find(city, availableTask == null ? vehicle.getCurrentCity() : availableTask.deliveryCity);
+		City destination = availableTask == null ? city : availableTask.deliveryCity;
+		int index;
 		
-		if (Best.get(state) == MyAction.SKIP) {
-			System.out.println(state + ": SKIP");
+		// There are no MyState objects in large-topology and Q_LEARNING modes, so the state is numbered as MyState does
+		if (largeTopology || learner != null)
+			index = city.id * topology.size() + destination.id;
+		else
+			index = MyState.find(city, destination).getIndex();
+		
+		MyAction choice = learner != null ? learn(vehicle, index) : policy.getAction(index);
+		
+		if (choice == MyAction.SKIP) {
+			System.out.println(city.name + "-" + destination.name + ": SKIP");
 			action = new Move(city.randomNeighbor(random));
 			numSkippedActions += 1;
 		}
 
 		else {
-			System.out.println(state + ": TAKE");
+			System.out.println(city.name + "-" + destination.name + ": TAKE");
 			action = new Pickup(availableTask);
 		}
 		
@@ -118,84 +331,25 @@ public class ReactiveAgent implements ReactiveBehavior {
 		return action;
 	}
 	
-	private void printV() {
-		if(V == null){
-			System.out.println("NULL");
-			return;
-		}
-		for (MyState state : MyState.getAllStates())
-			System.out.println(state + ": " + Best.get(state) + ", " + V.get(state));
-	}
-	
-	// Reward table
-	private double getReward(MyState state, MyAction action) {
-		Vehicle vehicle = myAgent.vehicles().iterator().next();
-		double reward = -vehicle.costPerKm();
-		
-		if (action == MyAction.SKIP)
-			return reward * getAvgDistance(state.getCitySrc());
-		else {
-			if (state.hasTask()) {
-				reward *= state.getDistance();
-				return reward + td.reward(state.getCitySrc(), state.getCityDst()); 
-			}
-			else
-				return Double.NEGATIVE_INFINITY;
-		}
-	}
-
-	// Average distance to neighbor cities, only used by the reward table
-	private double getAvgDistance(City citySrc) {
-		double sum = 0;
+	// Learns from the last transition, whose reward is the profit made since, and chooses the next action
+	private MyAction learn(Vehicle vehicle, int index) {
+		double profit = vehicle.getReward() - vehicle.getDistance() * vehicle.costPerKm();
 		
-		for (City cityDst : citySrc.neighbors())
-			sum += citySrc.distanceTo(cityDst);
+		if (lastState >= 0)
+			learner.update(lastState, lastAction, profit - lastProfit, index);
 		
-		return sum / citySrc.neighbors().size();
+		lastState = index;
+		lastAction = learner.choose(index);
+		lastProfit = profit;
+		return lastAction;
 	}
 	
-	// Transition table
-	private double getTransProb(MyState currState, MyAction action, MyState nextState) {
-		City cityA1 = currState.getCitySrc();
-		City cityA2 = currState.getCityDst();
-		City cityB1 = nextState.getCitySrc();
-		City cityB2 = nextState.getCityDst();
-		
-		if (action == MyAction.SKIP) {
-			// Probability that the agent is in city B1, which is NOT a neighbour of city A1, after SKIPping from city A1
-			if (!cityA1.hasNeighbor(cityB1))
-				return 0d;
-			// Probability that the agent is in city B1, which is a neighbour of city A1, while there is a task present to city B2, after SKIPping from city A1
-			else if (nextState.hasTask())
-				return (1.0 / cityA1.neighbors().size()) * td.probability(cityB1, cityB2);
-			// Probability that the agent is in city B1, which is a neighbour of city A1, while there is no task present, after SKIPping from city A1
-			else 
-				return (1.0 / cityA1.neighbors().size()) * td.probability(cityB1, null);
-		}
-		else {
-			// Probability that the agent is anywhere after TAKEing a task in city A1, while there was no task there OR
-			// Probability that the agent is in city B1, which is NOT the destination of the task in city A1, after TAKEing the task in city A1
-			if (!currState.hasTask() || cityB1 != cityA2)
-				return 0d;
-			// Probability that the agent is in city B1, the destination of the task in city A1, while there is a task present to city B2, after TAKEing the task in city A1
-			else if (nextState.hasTask())
-				return td.probability(cityB1, cityB2);
-			// Probability that the agent is in city B1, the destination of the task in city A1, while there is no task present, after TAKEing the task in city A1
-			else
-				return td.probability(cityB1, null);
-		}
-	}
-	
-	private double getMaxVChange(Map<MyState, Double> currV, Map<MyState, Double> nextV) {
-		double max = 0d;
-		
-		for (MyState state : currV.keySet()) {
-			double temp = Math.abs(currV.get(state) - nextV.get(state));
-			
-			if (temp > max)
-				max = temp;
+	private void printV() {
+		if(policy == null){
+			System.out.println("NULL");
+			return;
 		}
-		
-		return max;
+		for (MyState state : MyState.getAllStates())
+			System.out.println(state + ": " + policy.getAction(state.getIndex()) + ", " + policy.getValue(state.getIndex()));
 	}
 }
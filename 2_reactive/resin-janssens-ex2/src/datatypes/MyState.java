@@ -7,13 +7,24 @@ import logist.topology.Topology.City;
 
 public class MyState {
 	private City citySrc, cityDst;
+	private int index;
 	private static List<MyState> states = new ArrayList<MyState>();
+	// The same states by citySrc.id * numCities + cityDst.id, for find
+	private static MyState[] table = new MyState[0];
+	private static int numCities;
 	
+	// States are numbered in list order, so that solvers can keep their values in arrays
 	public static void setStates(List<City> cities) {
 		if(states.size() == 0){
+			numCities = cities.size();
+			table = new MyState[numCities * numCities];
+			
 			for (City citySrc : cities) {
 				for (City cityDst : cities) {
-					states.add(new MyState(citySrc, cityDst));
+					MyState state = new MyState(citySrc, cityDst);
+					state.index = states.size();
+					states.add(state);
+					table[citySrc.id * numCities + cityDst.id] = state;
 				}
 			}
 		}
@@ -28,6 +39,10 @@ public class MyState {
 		this.cityDst = cityDst;
 	}
 
+	public int getIndex() {
+		return index;
+	}
+	
 	public City getCitySrc() {
 		return citySrc;
 	}
@@ -49,12 +64,11 @@ public class MyState {
 		return citySrc.name + "-" + cityDst.name;
 	}
 	
+	// City ids are their positions in the topology, so the state is found without a scan
 	public static MyState find(City citySrc, City cityDst){
-		for(MyState state : states){
-			if(state.getCitySrc() == citySrc && state.getCityDst() == cityDst){
-				return state;
-			}
+		if(citySrc.id >= numCities || cityDst.id >= numCities){
+			return null;
 		}
-		return null;
+		return table[citySrc.id * numCities + cityDst.id];
 	}
 }
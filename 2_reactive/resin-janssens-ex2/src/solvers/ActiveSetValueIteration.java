@@ -0,0 +1,167 @@
+package solvers;
+
+import datatypes.MyAction;
+
+/**
+ * Asynchronous value iteration over a Model that only backs up the states
+ * whose inputs have changed. The value of state (x, c) depends on the
+ * arrival value of c, if the task is taken, and on the skip value of x, the
+ * mean of the arrival values of the neighbours of x. So there are two kinds
+ * of work, kept in one FIFO worklist of cities:
+ *
+ * - a row x, the states of x, when the skip value of x has moved by more
+ *   than epsilon since its states were last backed up as a row;
+ * - a column c, the states with a task to c, when the arrival value of c
+ *   is propagated.
+ *
+ * Backups update the arrival values as they go, but a change of the
+ * arrival value of a city is only propagated, to its column and to the
+ * skip values of its neighbours, once it is worth more than epsilon.
+ * When the worklist runs empty, no state is off by more than 3 * epsilon
+ * from its backup, so epsilon is a third of the threshold, the largest
+ * change that value iteration leaves in its last sweep.
+ *
+ * The sweeps reported are the backups made, in sweeps worth of states.
+ *
+ * An experiment, not one of the solvers of ReactiveAgent: on this MDP it
+ * is 2 to 3 times slower than ValueIteration. The arrival value of every
+ * city feeds a whole column of states, so a change reaches nearly every
+ * state, and the worklist saves about 5% of the backups at best.
+ */
+public class ActiveSetValueIteration {
+
+	private static final byte TAKE = (byte) MyAction.TAKE.ordinal();
+	private static final byte SKIP = (byte) MyAction.SKIP.ordinal();
+
+	private Model model;
+	private double discount;
+	private double epsilon;
+	private int numCities;
+	private double[] V;
+	private byte[] best;
+	// Arrival values of the current V, and as last propagated
+	private double[] W;
+	private double[] propagated;
+	// Skip values from the propagated arrival values, and as when the row was last backed up
+	private double[] skip;
+	private double[] skipSeen;
+	// Rows are numbered x and columns numCities + c
+	private int[] queue;
+	private boolean[] queued;
+	private int head;
+	private int size;
+	private long backups;
+
+	private ActiveSetValueIteration(Model model, double discount, double threshold) {
+		this.model = model;
+		this.discount = discount;
+		this.epsilon = threshold / 3;
+		numCities = model.getNumCities();
+		V = new double[model.getNumStates()];
+		best = new byte[model.getNumStates()];
+		W = new double[numCities];
+		propagated = new double[numCities];
+		skip = new double[numCities];
+		skipSeen = new double[numCities];
+		queue = new int[2 * numCities];
+		queued = new boolean[2 * numCities];
+	}
+
+	public static Policy solve(Model model, double discount, double threshold) {
+		ActiveSetValueIteration solver = new ActiveSetValueIteration(model, discount, threshold);
+		return solver.run();
+	}
+
+	private Policy run() {
+		int numStates = model.getNumStates();
+
+		for (int x = 0; x < numCities; x++) {
+			skip[x] = model.rewardSkip(x) + discount * model.skipValue(x, propagated);
+			enqueue(x);
+		}
+
+		while (size > 0) {
+			int work = queue[head];
+			head = head + 1 == queue.length ? 0 : head + 1;
+			size--;
+			queued[work] = false;
+
+			if (work < numCities)
+				backupRow(work);
+			else
+				backupColumn(work - numCities);
+		}
+
+		return new Policy(V, best, (int) ((backups + numStates - 1) / numStates));
+	}
+
+	private void backupRow(int x) {
+		skipSeen[x] = skip[x];
+
+		for (int state = x * numCities; state < (x + 1) * numCities; state++) {
+			backup(state, x);
+		}
+
+		propagate(x);
+	}
+
+	private void backupColumn(int c) {
+		for (int y = 0; y < numCities; y++) {
+			// The state without task in c does not depend on the arrival value of c
+			if (y != c)
+				backup(y * numCities + c, y);
+		}
+
+		for (int y = 0; y < numCities; y++) {
+			propagate(y);
+		}
+	}
+
+	private void backup(int state, int src) {
+		double take = model.rewardTake(state) + discount * model.takeValue(state, propagated);
+		double value;
+
+		// TAKE unless SKIP is strictly better
+		if (skip[src] > take) {
+			value = skip[src];
+			best[state] = SKIP;
+		} else {
+			value = take;
+			best[state] = TAKE;
+		}
+
+		W[src] += model.getArrival(state) * (value - V[state]);
+		V[state] = value;
+		backups++;
+	}
+
+	// Propagates the arrival value of x if it has moved by more than epsilon
+	private void propagate(int x) {
+		double change = W[x] - propagated[x];
+
+		// Written so that NaN is not propagated, as value iteration stops on it too
+		if (!(Math.abs(discount * change) > epsilon))
+			return;
+
+		propagated[x] = W[x];
+		enqueue(numCities + x);
+
+		for (int k = 0; k < model.getDegree(x); k++) {
+			int neighbor = model.getNeighbor(x, k);
+			skip[neighbor] += discount * change / model.getDegree(neighbor);
+
+			if (Math.abs(skip[neighbor] - skipSeen[neighbor]) > epsilon)
+				enqueue(neighbor);
+		}
+	}
+
+	private void enqueue(int work) {
+		if (queued[work])
+			return;
+
+		queued[work] = true;
+		int tail = head + size;
+		queue[tail < queue.length ? tail : tail - queue.length] = work;
+		size++;
+	}
+}
@@ -0,0 +1,64 @@
+package solvers;
+
+/**
+ * Value iteration for several discount factors at once over the same
+ * Model, so that vehicles which only differ by their discount share the
+ * sweeps. Every discount has its own contiguous V, and the sweeps of all
+ * of them advance together city by city: the rewards, arrival
+ * probabilities and neighbours of a city are read from memory once and
+ * then reused from the cache by the other discounts.
+ *
+ * A discount whose values have converged is taken out as its own Policy at
+ * that sweep, the Policy ValueIteration would return for it, and is no
+ * longer backed up, so the sweeps go on over the discounts left only.
+ */
+public class BatchValueIteration {
+
+	public static Policy[] solve(Model model, double[] discounts, double threshold) {
+		int numCities = model.getNumCities();
+		int numStates = model.getNumStates();
+		int k = discounts.length;
+		double[][] currV = new double[k][numStates];
+		double[][] nextV = new double[k][numStates];
+		double[][] W = new double[k][numCities];
+		byte[][] best = new byte[k][numStates];
+		double[] max = new double[k];
+		Policy[] policies = new Policy[k];
+		int remaining = k;
+		int sweeps = 0;
+
+		while (remaining > 0) {
+			for (int src = 0; src < numCities; src++) {
+				for (int d = 0; d < k; d++) {
+					if (policies[d] == null)
+						W[d][src] = model.arrivalValue(src, currV[d]);
+				}
+			}
+
+			for (int d = 0; d < k; d++) {
+				max[d] = 0d;
+			}
+
+			for (int src = 0; src < numCities; src++) {
+				for (int d = 0; d < k; d++) {
+					if (policies[d] == null)
+						max[d] = Math.max(max[d], ValueIteration.backupCity(model, src, discounts[d], currV[d], nextV[d], W[d], best[d]));
+				}
+			}
+
+			double[][] temp = currV;
+			currV = nextV;
+			nextV = temp;
+			sweeps++;
+
+			for (int d = 0; d < k; d++) {
+				if (policies[d] == null && max[d] <= threshold) {
+					policies[d] = new Policy(currV[d], best[d], sweeps);
+					remaining--;
+				}
+			}
+		}
+
+		return policies;
+	}
+}
@@ -0,0 +1,67 @@
+package solvers;
+
+import datatypes.MyAction;
+
+/**
+ * Gauss-Seidel value iteration over a Model: V is updated in place, and the
+ * arrival value of a city is kept up to date as its states change, so the
+ * cities backed up later in a sweep already see the new values of the
+ * earlier ones. Iteration stops once a sweep changes no value by more than
+ * the threshold.
+ */
+public class GaussSeidel {
+
+	private static final byte TAKE = (byte) MyAction.TAKE.ordinal();
+	private static final byte SKIP = (byte) MyAction.SKIP.ordinal();
+
+	public static Policy solve(Model model, double discount, double threshold) {
+		int numCities = model.getNumCities();
+		double[] V = new double[model.getNumStates()];
+		double[] W = new double[numCities];
+		byte[] best = new byte[model.getNumStates()];
+		double max = threshold + 1;
+		int sweeps = 0;
+
+		while (max > threshold) {
+			// Recomputed so that rounding errors of the updates do not pile up
+			model.arrivalValues(V, W);
+			max = 0d;
+
+			for (int src = 0; src < numCities; src++) {
+				max = Math.max(max, backupCity(model, src, discount, V, W, best));
+			}
+
+			sweeps++;
+		}
+
+		return new Policy(V, best, sweeps);
+	}
+
+	// Backs up the states of city src in place, updates W[src], and returns their largest change
+	static double backupCity(Model model, int src, double discount, double[] V, double[] W, byte[] best) {
+		int numCities = model.getNumCities();
+		double max = 0d;
+		double skip = model.rewardSkip(src) + discount * model.skipValue(src, W);
+
+		for (int state = src * numCities; state < (src + 1) * numCities; state++) {
+			double take = model.rewardTake(state) + discount * model.takeValue(state, W);
+			double value;
+
+			// TAKE unless SKIP is strictly better
+			if (skip > take) {
+				value = skip;
+				best[state] = SKIP;
+			} else {
+				value = take;
+				best[state] = TAKE;
+			}
+
+			// The states of src do not depend on W[src], as no route loops
+			W[src] += model.getArrival(state) * (value - V[state]);
+			max = Math.max(max, Math.abs(value - V[state]));
+			V[state] = value;
+		}
+
+		return max;
+	}
+}
@@ -0,0 +1,59 @@
+package solvers;
+
+import datatypes.MyAction;
+
+/**
+ * The Policy of ImplicitValueIteration. The actions are kept in a bitset,
+ * one bit per state set for SKIP, and a value is computed when asked for,
+ * from the arrival values of the cities and the rewards of the model.
+ */
+public class ImplicitPolicy extends Policy {
+
+	private LargeModel model;
+	private double discount;
+	private double[] W;
+	private double[] skip;
+	private long[] skipBits;
+
+	ImplicitPolicy(LargeModel model, double discount, double[] W, double[] skip, int sweeps) {
+		super(sweeps);
+		this.model = model;
+		this.discount = discount;
+		this.W = W;
+		this.skip = skip;
+
+		int numCities = model.getNumCities();
+		double[] rewardTake = new double[numCities];
+		double[] arrival = new double[numCities];
+		skipBits = new long[(model.getNumStates() + 63) >>> 6];
+
+		for (int src = 0; src < numCities; src++) {
+			model.row(src, rewardTake, arrival);
+
+			for (int dst = 0; dst < numCities; dst++) {
+				int state = src * numCities + dst;
+
+				if (skip[src] > rewardTake[dst] + discount * W[dst])
+					skipBits[state >>> 6] |= 1L << state;
+			}
+		}
+	}
+
+	@Override
+	public double getValue(int state) {
+		int src = state / model.getNumCities();
+		int dst = state % model.getNumCities();
+		double take = model.rewardTake(src, dst) + discount * W[dst];
+		return skip[src] > take ? skip[src] : take;
+	}
+
+	@Override
+	public MyAction getAction(int state) {
+		return (skipBits[state >>> 6] & (1L << state)) != 0 ? MyAction.SKIP : MyAction.TAKE;
+	}
+
+	@Override
+	public int getNumStates() {
+		return model.getNumStates();
+	}
+}
@@ -0,0 +1,71 @@
+package solvers;
+
+/**
+ * Value iteration over a LargeModel with no array of values. Every action
+ * ends in a city, so V(x, c) = max(reward of taking + discount * W[c],
+ * reward of skipping + discount * mean of W over the neighbours of x),
+ * where W is the expected value of arriving in each city, and a sweep only
+ * needs the W of the previous one. The solver streams through the rows of
+ * the model and keeps three W, of the sweeps before, now and next, so that
+ * the values of both sweeps, and thus their change, can be computed again
+ * from them. Memory is O(n) besides the policy, and the result is the one
+ * ValueIteration gives on the Model of the same topology.
+ */
+public class ImplicitValueIteration {
+
+	public static Policy solve(LargeModel model, double discount, double threshold) {
+		int numCities = model.getNumCities();
+		double[] prevW = new double[numCities];
+		double[] W = new double[numCities];
+		double[] nextW = new double[numCities];
+		double[] prevSkip = new double[numCities];
+		double[] skip = new double[numCities];
+		double[] rewardTake = new double[numCities];
+		double[] arrival = new double[numCities];
+		double max = threshold + 1;
+		int sweeps = 0;
+
+		while (max > threshold) {
+			max = 0d;
+
+			for (int src = 0; src < numCities; src++) {
+				skip[src] = model.rewardSkip(src) + discount * model.skipValue(src, W);
+			}
+
+			for (int src = 0; src < numCities; src++) {
+				model.row(src, rewardTake, arrival);
+				double sum = 0d;
+
+				for (int dst = 0; dst < numCities; dst++) {
+					double take = rewardTake[dst] + discount * W[dst];
+					// TAKE unless SKIP is strictly better
+					double value = skip[src] > take ? skip[src] : take;
+					double previous = 0d;
+
+					// The values start at 0
+					if (sweeps > 0) {
+						double previousTake = rewardTake[dst] + discount * prevW[dst];
+						previous = prevSkip[src] > previousTake ? prevSkip[src] : previousTake;
+					}
+
+					sum += arrival[dst] * value;
+					max = Math.max(max, Math.abs(value - previous));
+				}
+
+				nextW[src] = sum;
+			}
+
+			double[] temp = prevW;
+			prevW = W;
+			W = nextW;
+			nextW = temp;
+			temp = prevSkip;
+			prevSkip = skip;
+			skip = temp;
+			sweeps++;
+		}
+
+		// The last values were computed from the arrival values of the sweep before
+		return new ImplicitPolicy(model, discount, prevW, prevSkip, sweeps);
+	}
+}
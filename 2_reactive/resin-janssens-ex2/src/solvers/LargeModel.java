@@ -0,0 +1,84 @@
+package solvers;
+
+import java.util.List;
+
+import logist.task.TaskDistribution;
+import logist.topology.Topology;
+import logist.topology.Topology.City;
+
+/**
+ * The MDP of Model for topologies too large for its arrays of n^2 rewards
+ * and probabilities. Only what grows with the cities and the routes is
+ * kept, the neighbours in compressed rows and the rewards of skipping, and
+ * the rewards and arrival probabilities of the states of a city are read
+ * again from the topology and the task distribution, a row at a time,
+ * whenever a solver streams through them. States are the same numbers as
+ * in Model, src * n + dst, with no object per state.
+ */
+public class LargeModel {
+
+	// Beyond this, state numbers do not fit in an int
+	private static final int MAX_CITIES = 46340;
+
+	private List<City> cities;
+	private TaskDistribution td;
+	private double costPerKm;
+	private int numCities;
+	private Neighbors neighbors;
+
+	public LargeModel(Topology topology, TaskDistribution td, double costPerKm) {
+		this.cities = topology.cities();
+		this.td = td;
+		this.costPerKm = costPerKm;
+		numCities = cities.size();
+
+		if (numCities > MAX_CITIES)
+			throw new IllegalArgumentException("At most " + MAX_CITIES + " cities are supported, got " + numCities);
+
+		neighbors = new Neighbors(cities, costPerKm);
+	}
+
+	public int getNumCities() {
+		return numCities;
+	}
+
+	public int getNumStates() {
+		return numCities * numCities;
+	}
+
+	// Fills the rewards of taking and the arrival probabilities of the states of city src, by destination
+	public void row(int src, double[] rewardTake, double[] arrival) {
+		Model.fillRow(cities, td, costPerKm, cities.get(src), rewardTake, arrival, 0);
+	}
+
+	public double rewardTake(int src, int dst) {
+		return Model.takeReward(td, costPerKm, cities.get(src), cities.get(dst));
+	}
+
+	public double rewardSkip(int city) {
+		return neighbors.rewardSkip(city);
+	}
+
+	// Expected arrival value after skipping from city, given the arrival values W
+	public double skipValue(int city, double[] W) {
+		return neighbors.skipValue(city, W);
+	}
+
+	// The fingerprint Model would have for the same topology, distribution and cost
+	public long fingerprint() {
+		long h = neighbors.mixNeighbors(Model.mix(0, numCities));
+		double[] rewardTake = new double[numCities];
+		double[] arrival = new double[numCities];
+
+		for (int src = 0; src < numCities; src++) {
+			row(src, rewardTake, arrival);
+
+			for (int dst = 0; dst < numCities; dst++) {
+				h = Model.mix(h, Double.doubleToLongBits(arrival[dst]));
+				h = Model.mix(h, Double.doubleToLongBits(rewardTake[dst]));
+			}
+		}
+
+		return neighbors.mixRewardSkip(h);
+	}
+}
@@ -0,0 +1,139 @@
+package solvers;
+
+import java.util.List;
+
+import logist.task.TaskDistribution;
+import logist.topology.Topology;
+import logist.topology.Topology.City;
+
+/**
+ * The MDP of a reactive vehicle, over states numbered as in MyState: state
+ * src * n + dst is being in city src with a task to city dst, or with no
+ * task when dst == src. It is compiled once from the topology and the task
+ * distribution into flat arrays, so solvers never go back to them.
+ *
+ * Both actions lead to a city, where the next state only depends on the
+ * task found there: SKIP goes to a uniform neighbour of src, TAKE to dst.
+ * The transitions are therefore kept as the neighbours of every city, in
+ * compressed rows, and the arrival probabilities of the states of every
+ * city. A backup goes through the expected value of arriving in a city,
+ * computed once per sweep, so a sweep costs O(n^2 + edges) instead of the
+ * n^4 terms of the full transition matrix, most of them zero.
+ */
+public class Model {
+
+	private int numCities;
+	private int numStates;
+	private double[] rewardTake;
+	// Probability of the state (b1, b2) once in city b1
+	private double[] arrival;
+	private Neighbors neighbors;
+
+	public Model(Topology topology, TaskDistribution td, double costPerKm) {
+		List<City> cities = topology.cities();
+		numCities = cities.size();
+		numStates = numCities * numCities;
+		rewardTake = new double[numStates];
+		arrival = new double[numStates];
+		neighbors = new Neighbors(cities, costPerKm);
+
+		for (City src : cities) {
+			fillRow(cities, td, costPerKm, src, rewardTake, arrival, src.id * numCities);
+		}
+	}
+
+	// Fills the rewards of taking and the arrival probabilities of the states of src, by destination from offset
+	static void fillRow(List<City> cities, TaskDistribution td, double costPerKm, City src, double[] rewardTake, double[] arrival, int offset) {
+		for (City dst : cities) {
+			rewardTake[offset + dst.id] = takeReward(td, costPerKm, src, dst);
+			arrival[offset + dst.id] = td.probability(src, src == dst ? null : dst);
+		}
+	}
+
+	// Minus infinity when there is no task, so that it is never taken
+	static double takeReward(TaskDistribution td, double costPerKm, City src, City dst) {
+		if (src == dst)
+			return Double.NEGATIVE_INFINITY;
+
+		return -costPerKm * src.distanceTo(dst) + td.reward(src, dst);
+	}
+
+	public int getNumCities() {
+		return numCities;
+	}
+
+	public int getNumStates() {
+		return numStates;
+	}
+
+	public double rewardTake(int state) {
+		return rewardTake[state];
+	}
+
+	public double rewardSkip(int city) {
+		return neighbors.rewardSkip(city);
+	}
+
+	/**
+	 * A 64-bit hash of everything the solution depends on: the neighbours,
+	 * the arrival probabilities and the rewards, which hold the cost per km.
+	 */
+	public long fingerprint() {
+		long h = neighbors.mixNeighbors(mix(0, numCities));
+
+		for (int state = 0; state < numStates; state++) {
+			h = mix(h, Double.doubleToLongBits(arrival[state]));
+			h = mix(h, Double.doubleToLongBits(rewardTake[state]));
+		}
+
+		return neighbors.mixRewardSkip(h);
+	}
+
+	// One round of the SplitMix64 finalizer over h xor value
+	static long mix(long h, long value) {
+		long z = (h ^ value) + 0x9e3779b97f4a7c15L;
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	public double getArrival(int state) {
+		return arrival[state];
+	}
+
+	public int getDegree(int city) {
+		return neighbors.getDegree(city);
+	}
+
+	public int getNeighbor(int city, int k) {
+		return neighbors.getNeighbor(city, k);
+	}
+
+	// Fills W with the expected value of arriving in each city under V
+	public void arrivalValues(double[] V, double[] W) {
+		for (int city = 0; city < numCities; city++) {
+			W[city] = arrivalValue(city, V);
+		}
+	}
+
+	public double arrivalValue(int city, double[] V) {
+		double sum = 0;
+		int first = city * numCities;
+
+		for (int state = first; state < first + numCities; state++) {
+			sum += arrival[state] * V[state];
+		}
+
+		return sum;
+	}
+
+	// Expected arrival value after skipping from city, given the arrival values W
+	public double skipValue(int city, double[] W) {
+		return neighbors.skipValue(city, W);
+	}
+
+	// Expected arrival value after taking the task of state, given the arrival values W
+	public double takeValue(int state, double[] W) {
+		return W[state % numCities];
+	}
+}
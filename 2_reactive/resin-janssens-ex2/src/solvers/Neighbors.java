@@ -0,0 +1,88 @@
+package solvers;
+
+import java.util.List;
+
+import logist.topology.Topology.City;
+
+/**
+ * The neighbours of every city, in compressed rows, and the reward of
+ * skipping from it. Model and LargeModel share them, so that both compile
+ * the same MDP and have the same fingerprint.
+ */
+class Neighbors {
+
+	// Neighbours of city c in neighbors[neighborStart[c]] to neighbors[neighborStart[c + 1] - 1]
+	private int[] neighborStart;
+	private int[] neighbors;
+	// Per city, as skipping does not depend on the task
+	private double[] rewardSkip;
+
+	Neighbors(List<City> cities, double costPerKm) {
+		int numCities = cities.size();
+		rewardSkip = new double[numCities];
+		neighborStart = new int[numCities + 1];
+
+		for (City src : cities) {
+			neighborStart[src.id + 1] = neighborStart[src.id] + src.neighbors().size();
+		}
+
+		neighbors = new int[neighborStart[numCities]];
+
+		for (City src : cities) {
+			int k = neighborStart[src.id];
+			double sum = 0;
+
+			for (City dst : src.neighbors()) {
+				neighbors[k++] = dst.id;
+				sum += src.distanceTo(dst);
+			}
+
+			rewardSkip[src.id] = -costPerKm * sum / src.neighbors().size();
+		}
+	}
+
+	int getDegree(int city) {
+		return neighborStart[city + 1] - neighborStart[city];
+	}
+
+	int getNeighbor(int city, int k) {
+		return neighbors[neighborStart[city] + k];
+	}
+
+	double rewardSkip(int city) {
+		return rewardSkip[city];
+	}
+
+	// Expected arrival value after skipping from city, given the arrival values W
+	double skipValue(int city, double[] W) {
+		double sum = 0;
+
+		for (int k = neighborStart[city]; k < neighborStart[city + 1]; k++) {
+			sum += W[neighbors[k]];
+		}
+
+		return sum / (neighborStart[city + 1] - neighborStart[city]);
+	}
+
+	// Mixes the neighbours into the fingerprint h
+	long mixNeighbors(long h) {
+		for (int i = 0; i < neighborStart.length; i++) {
+			h = Model.mix(h, neighborStart[i]);
+		}
+
+		for (int i = 0; i < neighbors.length; i++) {
+			h = Model.mix(h, neighbors[i]);
+		}
+
+		return h;
+	}
+
+	// Mixes the rewards of skipping into the fingerprint h
+	long mixRewardSkip(long h) {
+		for (int city = 0; city < rewardSkip.length; city++) {
+			h = Model.mix(h, Double.doubleToLongBits(rewardSkip[city]));
+		}
+
+		return h;
+	}
+}
@@ -0,0 +1,98 @@
+package solvers;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Value iteration with the sweeps split over a fork-join pool, in Jacobi
+ * style: every backup of a sweep only reads the V of the previous sweep,
+ * so the cities can be backed up in any order and on any thread, and the
+ * result is the same as that of ValueIteration. The arrival values and the
+ * largest change of a sweep are computed in the same split, the latter by
+ * taking the max of the halves, which does not depend on the order either.
+ */
+public class ParallelValueIteration {
+
+	// States below which a range of cities is not split further
+	private static final int MIN_STATES = 4096;
+
+	public static Policy solve(Model model, double discount, double threshold, ForkJoinPool pool) {
+		int numCities = model.getNumCities();
+		Sweep sweep = new Sweep(model, discount);
+		sweep.grain = Math.max(1, MIN_STATES / numCities);
+		double max = threshold + 1;
+		int sweeps = 0;
+
+		while (max > threshold) {
+			sweep.arrival = true;
+			pool.invoke(new Cities(sweep, 0, numCities));
+			sweep.arrival = false;
+			max = pool.invoke(new Cities(sweep, 0, numCities));
+
+			double[] temp = sweep.currV;
+			sweep.currV = sweep.nextV;
+			sweep.nextV = temp;
+			sweeps++;
+		}
+
+		return new Policy(sweep.currV, sweep.best, sweeps);
+	}
+
+	// What the tasks of one sweep share
+	private static class Sweep {
+		private Model model;
+		private double discount;
+		private double[] currV;
+		private double[] nextV;
+		private double[] W;
+		private byte[] best;
+		private int grain;
+		// Whether the tasks compute the arrival values or back up the states
+		private boolean arrival;
+
+		Sweep(Model model, double discount) {
+			this.model = model;
+			this.discount = discount;
+			currV = new double[model.getNumStates()];
+			nextV = new double[model.getNumStates()];
+			W = new double[model.getNumCities()];
+			best = new byte[model.getNumStates()];
+		}
+	}
+
+	private static class Cities extends RecursiveTask<Double> {
+		private static final long serialVersionUID = 1L;
+
+		private Sweep sweep;
+		private int from;
+		private int to;
+
+		Cities(Sweep sweep, int from, int to) {
+			this.sweep = sweep;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Double compute() {
+			if (to - from > sweep.grain) {
+				int mid = (from + to) >>> 1;
+				Cities left = new Cities(sweep, from, mid);
+				left.fork();
+				double right = new Cities(sweep, mid, to).compute();
+				return Math.max(left.join(), right);
+			}
+
+			double max = 0d;
+
+			for (int src = from; src < to; src++) {
+				if (sweep.arrival)
+					sweep.W[src] = sweep.model.arrivalValue(src, sweep.currV);
+				else
+					max = Math.max(max, ValueIteration.backupCity(sweep.model, src, sweep.discount, sweep.currV, sweep.nextV, sweep.W, sweep.best));
+			}
+
+			return max;
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package solvers;
+
+import datatypes.MyAction;
+
+/**
+ * The solution of a Model: the value and the best action of every state,
+ * indexed like MyState, and the number of sweeps over the states it took.
+ */
+public class Policy {
+
+	// values() clones its array on every call
+	private static final MyAction[] ACTIONS = MyAction.values();
+
+	private double[] values;
+	private byte[] actions;
+	private int sweeps;
+
+	public Policy(double[] values, byte[] actions, int sweeps) {
+		this.values = values;
+		this.actions = actions;
+		this.sweeps = sweeps;
+	}
+
+	// For policies that compute their values rather than keep them
+	protected Policy(int sweeps) {
+		this.sweeps = sweeps;
+	}
+
+	public double getValue(int state) {
+		return values[state];
+	}
+
+	public MyAction getAction(int state) {
+		return ACTIONS[actions[state]];
+	}
+
+	public int getNumStates() {
+		return values.length;
+	}
+
+	double[] getValues() {
+		return values;
+	}
+
+	byte[] getActions() {
+		return actions;
+	}
+
+	public int getSweeps() {
+		return sweeps;
+	}
+}
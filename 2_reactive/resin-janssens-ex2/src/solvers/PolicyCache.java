@@ -0,0 +1,126 @@
+package solvers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A directory of solved policies, one file per key, so that an agent
+ * restarted on the same model loads its policy instead of solving it. The
+ * key is the fingerprint of the Model mixed with the name of the solver,
+ * the discount factor and the threshold.
+ *
+ * A file holds, little endian, a header of HEADER_SIZE bytes (the magic
+ * "RPOL", the version, the number of states, the sweeps and the key), then
+ * the values as doubles and the actions as bytes. A reader never sees a
+ * partial policy, as a file only appears under its key once complete.
+ */
+public class PolicyCache {
+
+	private static final int MAGIC = 0x52504f4c;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 32;
+
+	private File directory;
+
+	public PolicyCache(File directory) {
+		this.directory = directory;
+	}
+
+	// The solvers do not all reach the same values, so the solver is part of the key
+	public static long key(long fingerprint, String solver, double discount, double threshold) {
+		long h = Model.mix(fingerprint, solver.hashCode());
+		h = Model.mix(h, Double.doubleToLongBits(discount));
+		return Model.mix(h, Double.doubleToLongBits(threshold));
+	}
+
+	// The policy stored under key, or null if there is none for this number of states
+	public Policy load(long key, int numStates) throws IOException {
+		File file = fileOf(key);
+
+		if (!file.isFile() || file.length() != HEADER_SIZE + 9L * numStates)
+			return null;
+
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0)
+					return null;
+			}
+
+			buffer.flip();
+
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getInt() != numStates)
+				return null;
+
+			int sweeps = buffer.getInt();
+
+			if (buffer.getLong() != key)
+				return null;
+
+			double[] values = new double[numStates];
+			byte[] actions = new byte[numStates];
+			buffer.position(HEADER_SIZE);
+			buffer.asDoubleBuffer().get(values);
+			buffer.position(HEADER_SIZE + 8 * numStates);
+			buffer.get(actions);
+			return new Policy(values, actions, sweeps);
+		} finally {
+			channel.close();
+		}
+	}
+
+	public void store(long key, Policy policy) throws IOException {
+		if (policy.getValues() == null)
+			throw new IllegalArgumentException("Only policies that keep their values can be cached");
+
+		int numStates = policy.getNumStates();
+
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Cannot create the policy cache " + directory);
+
+		File temp = File.createTempFile("policy", ".tmp", directory);
+		FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE);
+		boolean written = false;
+
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 9 * numStates).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(numStates);
+			buffer.putInt(policy.getSweeps());
+			buffer.putLong(key);
+			buffer.position(HEADER_SIZE);
+			buffer.asDoubleBuffer().put(policy.getValues());
+			buffer.position(HEADER_SIZE + 8 * numStates);
+			buffer.put(policy.getActions());
+			buffer.flip();
+
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+
+			channel.force(true);
+			written = true;
+		} finally {
+			channel.close();
+
+			if (!written)
+				temp.delete();
+		}
+
+		Files.move(temp.toPath(), fileOf(key).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private File fileOf(long key) {
+		return new File(directory, String.format("%016x.policy", key));
+	}
+}
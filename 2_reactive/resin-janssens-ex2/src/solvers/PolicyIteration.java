@@ -0,0 +1,167 @@
+package solvers;
+
+import java.util.Arrays;
+
+import datatypes.MyAction;
+
+/**
+ * Modified policy iteration over a Model. A greedy sweep, which is a sweep
+ * of ValueIteration, improves the policy, which is then evaluated, until a
+ * greedy sweep changes no value by more than the threshold, or no action
+ * after an exact evaluation.
+ *
+ * Under a fixed policy the arrival values of the cities solve the n x n
+ * linear system W[x] = sum over the tasks c taken from x of p(x, c) *
+ * (reward(x, c) + discount * W[c]) + p(skip in x) * (reward of skipping +
+ * discount * mean of W over the neighbours of x). Up to DIRECT_CITIES
+ * cities it is solved exactly by Gaussian elimination, in O(n^3), so that
+ * a few iterations are enough. Its matrix is strictly diagonally dominant,
+ * so no pivoting is needed. On larger topologies the policy is evaluated
+ * by up to EVALUATION_SWEEPS sweeps that back up its own action only. An
+ * exact evaluation counts as one sweep.
+ */
+public class PolicyIteration {
+
+	private static final int DIRECT_CITIES = 2000;
+	private static final int EVALUATION_SWEEPS = 20;
+	private static final byte SKIP = (byte) MyAction.SKIP.ordinal();
+
+	public static Policy solve(Model model, double discount, double threshold) {
+		int numCities = model.getNumCities();
+		double[] currV = new double[model.getNumStates()];
+		double[] nextV = new double[model.getNumStates()];
+		double[] W = new double[numCities];
+		byte[] best = new byte[model.getNumStates()];
+		byte[] previous = new byte[model.getNumStates()];
+		double[] system = numCities <= DIRECT_CITIES ? new double[numCities * (numCities + 1)] : null;
+		int sweeps = 0;
+
+		while (true) {
+			System.arraycopy(best, 0, previous, 0, best.length);
+			model.arrivalValues(currV, W);
+			double max = 0d;
+
+			for (int src = 0; src < numCities; src++) {
+				max = Math.max(max, ValueIteration.backupCity(model, src, discount, currV, nextV, W, best));
+			}
+
+			double[] temp = currV;
+			currV = nextV;
+			nextV = temp;
+			sweeps++;
+
+			// A stable policy is only optimal if it was evaluated exactly
+			if (max <= threshold || (system != null && sweeps > 1 && Arrays.equals(best, previous)))
+				break;
+
+			if (system != null) {
+				solveArrivalValues(model, discount, best, system, W);
+				policyValues(model, discount, best, W, currV);
+				sweeps++;
+			} else {
+				sweeps += evaluate(model, discount, threshold, best, currV, nextV, W);
+			}
+		}
+
+		return new Policy(currV, best, sweeps);
+	}
+
+	// Up to EVALUATION_SWEEPS sweeps of the policy, back into V, returning how many were made
+	private static int evaluate(Model model, double discount, double threshold, byte[] best, double[] V, double[] nextV, double[] W) {
+		double max = threshold + 1;
+		int sweeps = 0;
+
+		while (sweeps < EVALUATION_SWEEPS && max > threshold) {
+			model.arrivalValues(V, W);
+			policyValues(model, discount, best, W, nextV);
+			max = 0d;
+
+			for (int state = 0; state < V.length; state++) {
+				max = Math.max(max, Math.abs(nextV[state] - V[state]));
+			}
+
+			System.arraycopy(nextV, 0, V, 0, V.length);
+			sweeps++;
+		}
+
+		return sweeps;
+	}
+
+	// The values of the states under the policy, given the arrival values W
+	private static void policyValues(Model model, double discount, byte[] best, double[] W, double[] V) {
+		int numCities = model.getNumCities();
+
+		for (int src = 0; src < numCities; src++) {
+			double skip = model.rewardSkip(src) + discount * model.skipValue(src, W);
+
+			for (int state = src * numCities; state < (src + 1) * numCities; state++) {
+				if (best[state] == SKIP)
+					V[state] = skip;
+				else
+					V[state] = model.rewardTake(state) + discount * model.takeValue(state, W);
+			}
+		}
+	}
+
+	// Builds the system of the arrival values under the policy, rows of n coefficients then the constant, and solves it into W
+	private static void solveArrivalValues(Model model, double discount, byte[] best, double[] system, double[] W) {
+		int n = model.getNumCities();
+		int width = n + 1;
+		Arrays.fill(system, 0d);
+
+		for (int x = 0; x < n; x++) {
+			int row = x * width;
+			double skipProbability = 0d;
+			double constant = 0d;
+
+			for (int c = 0; c < n; c++) {
+				int state = x * n + c;
+				double p = model.getArrival(state);
+
+				if (best[state] == SKIP) {
+					skipProbability += p;
+				} else {
+					system[row + c] -= discount * p;
+					constant += p * model.rewardTake(state);
+				}
+			}
+
+			int degree = model.getDegree(x);
+
+			for (int k = 0; k < degree; k++) {
+				system[row + model.getNeighbor(x, k)] -= discount * skipProbability / degree;
+			}
+
+			system[row + x] += 1d;
+			system[row + n] = constant + skipProbability * model.rewardSkip(x);
+		}
+
+		for (int pivot = 0; pivot < n; pivot++) {
+			int pivotRow = pivot * width;
+			double diagonal = system[pivotRow + pivot];
+
+			for (int x = pivot + 1; x < n; x++) {
+				int row = x * width;
+				double factor = system[row + pivot] / diagonal;
+
+				if (factor == 0d)
+					continue;
+
+				for (int c = pivot; c <= n; c++) {
+					system[row + c] -= factor * system[pivotRow + c];
+				}
+			}
+		}
+
+		for (int x = n - 1; x >= 0; x--) {
+			int row = x * width;
+			double sum = system[row + n];
+
+			for (int c = x + 1; c < n; c++) {
+				sum -= system[row + c] * W[c];
+			}
+
+			W[x] = sum / system[row + x];
+		}
+	}
+}
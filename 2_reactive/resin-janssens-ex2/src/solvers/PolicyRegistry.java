@@ -0,0 +1,45 @@
+package solvers;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The solutions computed in this JVM, by key, so that vehicles with the
+ * same model solve it once: the first thread to ask for a key registers a
+ * future and computes it, the others wait on that future and get the same
+ * result, which they must only read. A solve that fails is removed, so the
+ * next request tries again.
+ */
+public class PolicyRegistry {
+
+	private static ConcurrentHashMap<Long, Future<?>> solutions = new ConcurrentHashMap<Long, Future<?>>();
+
+	// The solution of key, computed by solver if no thread did or is doing it
+	@SuppressWarnings("unchecked")
+	public static <T> T get(long key, Callable<T> solver) {
+		Future<?> future = solutions.get(key);
+
+		if (future == null) {
+			FutureTask<T> task = new FutureTask<T>(solver);
+			future = solutions.putIfAbsent(key, task);
+
+			if (future == null) {
+				future = task;
+				task.run();
+			}
+		}
+
+		try {
+			return (T) future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a policy", e);
+		} catch (ExecutionException e) {
+			solutions.remove(key, future);
+			throw new IllegalStateException("Solving the policy failed", e.getCause());
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package solvers;
+
+/**
+ * Prioritized sweeping over a Model, by city. Every state of a city is
+ * backed up together, in place as in GaussSeidel, and when the arrival
+ * value of city c changes by d, every other city x gains a priority of
+ * discount * d weighted by the probability of a task from x to c, and
+ * every neighbour of c discount * d over its degree. This bounds how much
+ * the arrival value of x would change if it were backed up, so the cities
+ * are backed up by decreasing priority, as long as it is above the
+ * threshold and for at most one sweep worth of cities. Then a full sweep
+ * is made, which is also where convergence is checked, as in GaussSeidel.
+ *
+ * Picking a city is a scan of the priorities, which costs as much as
+ * backing it up. The sweeps reported count the prioritized backups in
+ * sweeps worth of cities.
+ */
+public class PrioritizedSweeping {
+
+	public static Policy solve(Model model, double discount, double threshold) {
+		int numCities = model.getNumCities();
+		double[] V = new double[model.getNumStates()];
+		double[] W = new double[numCities];
+		byte[] best = new byte[model.getNumStates()];
+		double[] priority = new double[numCities];
+		long backups = 0;
+		int sweeps = 0;
+
+		while (true) {
+			model.arrivalValues(V, W);
+			double max = 0d;
+
+			for (int src = 0; src < numCities; src++) {
+				max = Math.max(max, backupCity(model, src, discount, V, W, best, priority));
+			}
+
+			sweeps++;
+
+			if (max <= threshold)
+				break;
+
+			for (int k = 0; k < numCities; k++) {
+				int city = 0;
+
+				for (int c = 1; c < numCities; c++) {
+					if (priority[c] > priority[city])
+						city = c;
+				}
+
+				if (priority[city] <= threshold)
+					break;
+
+				backupCity(model, city, discount, V, W, best, priority);
+				backups++;
+			}
+		}
+
+		return new Policy(V, best, sweeps + (int) ((backups + numCities - 1) / numCities));
+	}
+
+	// Backs up the states of city src, then raises the priorities of the cities its arrival value reaches
+	private static double backupCity(Model model, int src, double discount, double[] V, double[] W, byte[] best, double[] priority) {
+		int numCities = model.getNumCities();
+		double before = W[src];
+		double max = GaussSeidel.backupCity(model, src, discount, V, W, best);
+		double change = discount * Math.abs(W[src] - before);
+		priority[src] = 0d;
+
+		if (change == 0d)
+			return max;
+
+		for (int x = 0; x < numCities; x++) {
+			if (x != src)
+				priority[x] += change * model.getArrival(x * numCities + src);
+		}
+
+		for (int k = 0; k < model.getDegree(src); k++) {
+			int neighbor = model.getNeighbor(src, k);
+			priority[neighbor] += change / model.getDegree(neighbor);
+		}
+
+		return max;
+	}
+}
@@ -0,0 +1,169 @@
+package solvers;
+
+import java.util.Random;
+
+import datatypes.MyAction;
+
+/**
+ * Online Q-learning, for when the task distribution is not known. The
+ * Q-values of the two actions of every state, indexed like MyState, are
+ * kept in one array, TAKE at 2 * state and SKIP at 2 * state + 1, and are
+ * updated from the transitions the vehicle goes through:
+ *
+ *   Q(s, a) += learningRate * (r + discount * max Q(s', .) - Q(s, a))
+ *
+ * where TAKE is not an action of the states without a task. Actions are
+ * chosen epsilon-greedily, TAKE unless SKIP is strictly better, as in the
+ * solvers. Nothing is allocated per transition.
+ *
+ * With a replay batch, the transitions are also kept in a ring buffer, and
+ * a daemon thread learns again from batchSize of them, drawn at random,
+ * every time batchSize new ones have come in. Updates are made under the
+ * lock of this object, one transition at a time, so the decisions are
+ * never held up by more than one replayed update. The agent is never told
+ * that the simulation is over, so the thread ends by itself once no batch
+ * has come in for IDLE_MILLIS, and is started again by the next one.
+ */
+public class QLearning implements Runnable {
+
+	private static final int TAKE = MyAction.TAKE.ordinal();
+	private static final int SKIP = MyAction.SKIP.ordinal();
+	private static final long IDLE_MILLIS = 10000;
+
+	private int numCities;
+	private double discount;
+	private double learningRate;
+	private double exploration;
+	private Random random;
+	private double[] Q;
+
+	// Replayed transitions, the last capacity ones in a ring
+	private int[] replayState;
+	private byte[] replayAction;
+	private double[] replayReward;
+	private int[] replayNext;
+	private int replayCount;
+	private int replayHead;
+	private int batchSize;
+	private long recorded;
+	private long replayed;
+	private boolean replaying;
+
+	public QLearning(int numCities, double discount, double learningRate, double exploration, Random random) {
+		this.numCities = numCities;
+		this.discount = discount;
+		this.learningRate = learningRate;
+		this.exploration = exploration;
+		this.random = random;
+		this.Q = new double[2 * numCities * numCities];
+	}
+
+	/**
+	 * Replays batches of batchSize transitions out of the last capacity
+	 * ones, from the first batch on.
+	 */
+	public synchronized void setReplay(int capacity, int batchSize) {
+		if (batchSize <= 0 || capacity < batchSize)
+			throw new IllegalArgumentException("Cannot replay batches of " + batchSize + " out of " + capacity + " transitions");
+
+		replayState = new int[capacity];
+		replayAction = new byte[capacity];
+		replayReward = new double[capacity];
+		replayNext = new int[capacity];
+		this.batchSize = batchSize;
+	}
+
+	// The epsilon-greedy action of state, only SKIP if there is no task
+	public synchronized MyAction choose(int state) {
+		if (!hasTask(state))
+			return MyAction.SKIP;
+
+		if (random.nextDouble() < exploration)
+			return random.nextBoolean() ? MyAction.TAKE : MyAction.SKIP;
+
+		return greedy(state) == SKIP ? MyAction.SKIP : MyAction.TAKE;
+	}
+
+	// Learns from taking action in state, which paid reward and led to next
+	public synchronized void update(int state, MyAction action, double reward, int next) {
+		learn(state, action.ordinal(), reward, next);
+
+		if (replayState == null)
+			return;
+
+		replayState[replayHead] = state;
+		replayAction[replayHead] = (byte) action.ordinal();
+		replayReward[replayHead] = reward;
+		replayNext[replayHead] = next;
+		replayHead = replayHead + 1 == replayState.length ? 0 : replayHead + 1;
+		replayCount = Math.min(replayCount + 1, replayState.length);
+		recorded++;
+
+		if (recorded - replayed < batchSize)
+			return;
+
+		if (replaying) {
+			notifyAll();
+			return;
+		}
+
+		// The only allocation, once at the first batch and after every idle period
+		replaying = true;
+		Thread thread = new Thread(this, "Q-learning replay");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void run() {
+		Random replayRandom = new Random();
+
+		while (true) {
+			synchronized (this) {
+				long idleSince = System.currentTimeMillis();
+
+				while (recorded - replayed < batchSize) {
+					long idle = System.currentTimeMillis() - idleSince;
+
+					if (idle >= IDLE_MILLIS) {
+						replaying = false;
+						return;
+					}
+
+					try {
+						wait(IDLE_MILLIS - idle);
+					} catch (InterruptedException e) {
+						replaying = false;
+						return;
+					}
+				}
+
+				replayed += batchSize;
+			}
+
+			// The decision thread may update between two replayed transitions
+			for (int k = 0; k < batchSize; k++) {
+				synchronized (this) {
+					int i = replayRandom.nextInt(replayCount);
+					learn(replayState[i], replayAction[i], replayReward[i], replayNext[i]);
+				}
+			}
+		}
+	}
+
+	private void learn(int state, int action, double reward, int next) {
+		int q = 2 * state + action;
+		Q[q] += learningRate * (reward + discount * Q[2 * next + greedy(next)] - Q[q]);
+	}
+
+	// TAKE unless SKIP is strictly better or there is no task
+	private int greedy(int state) {
+		if (!hasTask(state) || Q[2 * state + SKIP] > Q[2 * state + TAKE])
+			return SKIP;
+
+		return TAKE;
+	}
+
+	private boolean hasTask(int state) {
+		return state / numCities != state % numCities;
+	}
+}
@@ -0,0 +1,66 @@
+package solvers;
+
+import datatypes.MyAction;
+
+/**
+ * Synchronous value iteration over a Model. V and the next V are two arrays
+ * swapped after each sweep, so sweeps allocate nothing, and iteration stops
+ * once no value changes by more than the threshold.
+ */
+public class ValueIteration {
+
+	private static final byte TAKE = (byte) MyAction.TAKE.ordinal();
+	private static final byte SKIP = (byte) MyAction.SKIP.ordinal();
+
+	public static Policy solve(Model model, double discount, double threshold) {
+		int numCities = model.getNumCities();
+		int numStates = model.getNumStates();
+		double[] currV = new double[numStates];
+		double[] nextV = new double[numStates];
+		double[] W = new double[numCities];
+		byte[] best = new byte[numStates];
+		double max = threshold + 1;
+		int sweeps = 0;
+
+		while (max > threshold) {
+			model.arrivalValues(currV, W);
+			max = 0d;
+
+			for (int src = 0; src < numCities; src++) {
+				max = Math.max(max, backupCity(model, src, discount, currV, nextV, W, best));
+			}
+
+			double[] temp = currV;
+			currV = nextV;
+			nextV = temp;
+			sweeps++;
+		}
+
+		return new Policy(currV, best, sweeps);
+	}
+
+	// Backs up the states of city src into nextV and best, and returns their largest change
+	static double backupCity(Model model, int src, double discount, double[] currV, double[] nextV, double[] W, byte[] best) {
+		int numCities = model.getNumCities();
+		double max = 0d;
+		// SKIP is the same for every task in src
+		double skip = model.rewardSkip(src) + discount * model.skipValue(src, W);
+
+		for (int state = src * numCities; state < (src + 1) * numCities; state++) {
+			double take = model.rewardTake(state) + discount * model.takeValue(state, W);
+
+			// TAKE unless SKIP is strictly better
+			if (skip > take) {
+				nextV[state] = skip;
+				best[state] = SKIP;
+			} else {
+				nextV[state] = take;
+				best[state] = TAKE;
+			}
+
+			max = Math.max(max, Math.abs(nextV[state] - currV[state]));
+		}
+
+		return max;
+	}
+}